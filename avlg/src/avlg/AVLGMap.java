@@ -0,0 +1,255 @@
+package avlg;
+
+import avlg.exceptions.InvalidBalanceException;
+
+import java.util.Objects;
+import java.util.function.BiFunction;
+
+/**
+ * <p>{@link AVLGMap} is a key-value map built on an {@link AVLGTree}: every node holds a key and the value
+ * associated with it, and the tree is kept balanced by the same code, under the relaxed condition controlled
+ * by the maximum imbalance G given to the constructor.</p>
+ *
+ * <p>The point of keeping values next to the keys, rather than wrapping both in a composite key, is that changing
+ * the value of a key that is already in the map never touches the shape of the tree. {@link #put(Comparable, Object)},
+ * {@link #compute(Comparable, BiFunction)} and {@link #merge(Comparable, Object, BiFunction)} find the key in a
+ * single descent and, if it is there, overwrite its value in place. Only adding a new key or removing one can
+ * cause rotations.</p>
+ *
+ * <p>As in {@link java.util.Map}, {@code null} is used to signal the absence of a value, so the map does
+ * <b>not</b> store {@code null} values. The remapping functions given to {@link #compute(Comparable, BiFunction)}
+ * and {@link #merge(Comparable, Object, BiFunction)} must not modify the map themselves.</p>
+ *
+ * @author Joe Barresi
+ *
+ * @see AVLGTree
+ * @see InvalidBalanceException
+ */
+public class AVLGMap<K extends Comparable<K>, V> {
+
+	// The tree that holds the entries. Its nodes carry a value next to the key, but every descent, rotation
+	// and rebalancing pass is AVLGTree's own.
+	private final Tree<K, V> tree;
+
+	private static class Tree<K extends Comparable<K>, V> extends AVLGTree<K> {
+
+		Tree(int maxImbalance) throws InvalidBalanceException {
+			super(maxImbalance);
+		}
+
+		class Entry extends Node {
+			V value;
+
+			Entry(K key) {
+				super(null, null, key);
+			}
+
+			@Override
+			void takeEntry(Node from) {
+				super.takeEntry(from);
+				value = entry(from).value;
+			}
+		}
+
+		// Every node of this tree is an Entry, but a cast to an inner class of a generic class can't be
+		// checked at runtime, so it is made here once.
+		@SuppressWarnings("unchecked")
+		Entry entry(Node node) {
+			return (Entry) node;
+		}
+
+		@Override
+		Node newLeaf(K key) {
+			return new Entry(key);
+		}
+
+		@Override
+		Entry locate(K key) {
+			return entry(super.locate(key));
+		}
+
+		@Override
+		Entry attach(K key) {
+			return entry(super.attach(key));
+		}
+
+		@Override
+		Entry find(K key) {
+			return entry(super.find(key));
+		}
+	}
+
+	// Stores the outcome of a remapping function for an entry found (or not) by the last locate().
+	private V store(Tree<K, V>.Entry cur, K key, V value) {
+		if (cur == null) {
+			if (value != null) {
+				tree.attach(key).value = value;
+			} else {
+				tree.releasePath();
+			}
+		} else if (value == null) {
+			tree.detach(cur);
+		} else {
+			cur.value = value;
+			tree.releasePath();
+		}
+		return value;
+	}
+
+	/**
+	 * The class constructor provides the map with the maximum imbalance allowed in its tree.
+	 * @param maxImbalance The maximum imbalance allowed by the underlying AVL-G Tree.
+	 * @throws InvalidBalanceException if maxImbalance is a value smaller than 1.
+	 */
+	public AVLGMap(int maxImbalance) throws InvalidBalanceException {
+		if (maxImbalance < 1) {
+			throw new InvalidBalanceException("Error creating a new AVL-G Map");
+		}
+		tree = new Tree<>(maxImbalance);
+	}
+
+	/**
+	 * Associate value with key. If key is already in the map, its value is replaced in place, without any
+	 * change to the tree.
+	 * @param key The key.
+	 * @param value The value to associate with key.
+	 * @return The value previously associated with key, or {@code null} if there was none.
+	 * @throws NullPointerException if key or value is {@code null}.
+	 */
+	public V put(K key, V value) {
+		Objects.requireNonNull(key);
+		Objects.requireNonNull(value);
+		Tree<K, V>.Entry cur = tree.locate(key);
+		V old = (cur == null) ? null : cur.value;
+		store(cur, key, value);
+		return old;
+	}
+
+	/**
+	 * Return the value associated with key.
+	 * @param key The key to look up.
+	 * @return The value associated with key, or {@code null} if key is not in the map.
+	 * @throws NullPointerException if key is {@code null}.
+	 */
+	public V get(K key) {
+		Objects.requireNonNull(key);
+		Tree<K, V>.Entry cur = tree.find(key);
+		return (cur == null) ? null : cur.value;
+	}
+
+	/**
+	 * Query the map for a key.
+	 * @param key The key to look up.
+	 * @return {@code true} if key is in the map, {@code false} otherwise.
+	 * @throws NullPointerException if key is {@code null}.
+	 */
+	public boolean containsKey(K key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Remove key, and the value associated with it, from the map.
+	 * @param key The key to remove.
+	 * @return The value that was associated with key, or {@code null} if key was not in the map.
+	 * @throws NullPointerException if key is {@code null}.
+	 */
+	public V remove(K key) {
+		Objects.requireNonNull(key);
+		Tree<K, V>.Entry cur = tree.locate(key);
+		V old = (cur == null) ? null : cur.value;
+		store(cur, key, null);
+		return old;
+	}
+
+	/**
+	 * <p>Compute a new value for key out of its current one, in a single descent. The function receives the key
+	 * and its current value ({@code null} if it is absent). If it returns {@code null}, the key is removed (or
+	 * stays absent); otherwise its value is updated in place, or the key is added if it was absent. If it throws,
+	 * the exception is passed on and the map is left unchanged.</p>
+	 * @param key The key.
+	 * @param remapping The function that computes the new value.
+	 * @return The new value associated with key, or {@code null} if there is none.
+	 * @throws NullPointerException if key or remapping is {@code null}.
+	 */
+	public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+		Objects.requireNonNull(key);
+		Objects.requireNonNull(remapping);
+		Tree<K, V>.Entry cur = tree.locate(key);
+		try {
+			return store(cur, key, remapping.apply(key, (cur == null) ? null : cur.value));
+		} finally {
+			tree.releasePath(); // In case the function threw, and the map is left as it was
+		}
+	}
+
+	/**
+	 * <p>Merge value into the value associated with key, in a single descent. If key is absent, it is added with
+	 * value. Otherwise the function combines the current value with value: a non-{@code null} result replaces
+	 * the current value in place, and a {@code null} result removes the key. If the function throws, the
+	 * exception is passed on and the map is left unchanged.</p>
+	 * @param key The key.
+	 * @param value The value to merge in.
+	 * @param remapping The function that combines the current value with value.
+	 * @return The new value associated with key, or {@code null} if there is none.
+	 * @throws NullPointerException if key, value or remapping is {@code null}.
+	 */
+	public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remapping) {
+		Objects.requireNonNull(value);
+		Objects.requireNonNull(key);
+		Objects.requireNonNull(remapping);
+		Tree<K, V>.Entry cur = tree.locate(key);
+		try {
+			return store(cur, key, (cur == null) ? value : remapping.apply(cur.value, value));
+		} finally {
+			tree.releasePath(); // In case the function threw, and the map is left as it was
+		}
+	}
+
+	/**
+	 * Retrieves the maximum imbalance parameter.
+	 * @return The maximum imbalance parameter provided as a constructor parameter.
+	 */
+	public int getMaxImbalance() {
+		return tree.getMaxImbalance();
+	}
+
+	/**
+	 * Return the height of the underlying tree, or -1 if the map is empty.
+	 * @return The height of the underlying tree.
+	 */
+	public int getHeight() {
+		return tree.getHeight();
+	}
+
+	/**
+	 * <p>Establishes whether the underlying tree <em>globally</em> satisfies the AVL-G condition.</p>
+	 * @return {@code true} if the tree satisfies the balance requirements of an AVLG tree, {@code false}
+	 * otherwise.
+	 */
+	public boolean isAVLGBalanced() {
+		return tree.isAVLGBalanced();
+	}
+
+	/**
+	 * Query the map for emptiness.
+	 * @return {@code true} if the map is empty, {@code false} otherwise.
+	 */
+	public boolean isEmpty() {
+		return tree.isEmpty();
+	}
+
+	/**
+	 * <p>Empties the map of all its entries.</p>
+	 */
+	public void clear() {
+		tree.clear();
+	}
+
+	/**
+	 * <p>Return the number of keys in the map.</p>
+	 * @return The number of keys in the map.
+	 */
+	public int getCount() {
+		return tree.getCount();
+	}
+}
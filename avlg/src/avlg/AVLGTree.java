@@ -3,6 +3,22 @@ package avlg;
 import avlg.exceptions.UnimplementedMethodException;
 import avlg.exceptions.EmptyTreeException;
 import avlg.exceptions.InvalidBalanceException;
+import avlg.AVLGTreeListener.Operation;
+import avlg.AVLGTreeListener.Rotation;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /** <p>{@link AVLGTree}  is a class representing an <a href="https://en.wikipedia.org/wiki/AVL_tree">AVL Tree</a> with
  * a relaxed balance condition. Its constructor receives a strictly  positive parameter which controls the <b>maximum</b>
@@ -26,7 +42,7 @@ import avlg.exceptions.InvalidBalanceException;
  * @see InvalidBalanceException
  * @see StudentTests
  */
-public class AVLGTree<T extends Comparable<T>> {
+public class AVLGTree<T extends Comparable<T>> implements Iterable<T> {
 
     /* ********************************************************* *
      * Write any private data elements or private methods here...*
@@ -35,38 +51,87 @@ public class AVLGTree<T extends Comparable<T>> {
 	private int size;
 	private Node root;
 	
-	private class Node {
+	// Optional profiling hook; null, the default, skips all reporting.
+	private AVLGTreeListener<? super T> listener;
+	
+	// Adaptive balance (see enableAdaptiveBalance). The counters cover the current sampling window, which
+	// any operation may close; targetG is the tighter parameter the tree will switch to at its next rebuild,
+	// and pendingOps counts the operations seen since that lowering was first requested.
+	private boolean adaptive;
+	private int minG, maxG, targetG;
+	private long reads, writes, rotations;
+	private long pendingOps;
+	
+	// Number of operations that make up one sampling window of the adaptive mode.
+	private static final int ADAPT_WINDOW = 1 << 12;
+	
+	// Below this many keys, parallelUnion() stops forking and finishes sequentially.
+	private static final int PARALLEL_THRESHOLD = 1 << 13;
+	
+	// Reusable root-to-leaf path for the iterative insert and delete, so that they need no recursion.
+	private Node[] path = newArray(Node.class, 16);
+	
+	// Finger of fingerSearch(): the root-to-node path to the last node it reached, and for every level the
+	// indices into finger of the nearest ancestors that bound that node's subtree from below and from above
+	// (-1 where it is unbounded). It stands in for parent links, and is trusted only while modCount, which
+	// every structural change bumps, still equals fingerMod.
+	private Node[] finger;
+	private int[] fingerLo, fingerHi;
+	private int fingerDepth;
+	private int fingerMod, modCount;
+	
+	// Where the last locate() stopped: the length of its path in the path buffer, and whether the key it
+	// looked for is (or would be) a left child of path[located - 1].
+	private int located;
+	private boolean locatedLeft;
+	
+	// Package-private so that AVLGMap can keep its entries in subclasses of it (see newLeaf).
+	class Node {
 		Node left;
 		Node right;
 		T key;
+		int height;
+		int size;
 		
 		public int getHeight() {
-			if (right == null && left == null) {
-				return 0;
-			} else if (right == null) {
-				return left.getHeight() + 1;
-			} else if (left == null) {
-				return right.getHeight() + 1;
-			} else {
-				return Math.max(left.getHeight(), right.getHeight()) + 1;
-			}
+			return height;
 		}
 
 		public Node(AVLGTree<T>.Node left, AVLGTree<T>.Node right, T key) {
 			this.left = left;
 			this.right = right;
 			this.key = key;
+			update();
 		}
 
 		public T getKey() {
 			return key;
-		}		
+		}
+		
+		// Recomputes the cached height and subtree size from the (already correct) children.
+		void update() {
+			height = Math.max(height(left), height(right)) + 1;
+			size = size(left) + size(right) + 1;
+		}
+		
+		// Takes over the contents of from, when a deletion moves the inorder successor up into this node.
+		// Subclasses that carry more than the key take over the rest too.
+		void takeEntry(Node from) {
+			key = from.key;
+		}
+	}
+	
+	// Creates the node for a key that is being inserted. AVLGMap overrides it to hang nodes with values.
+	Node newLeaf(T key) {
+		return new Node(null, null, key);
 	}
 	
 	private Node rotateRight(Node tgt) {
 		Node temp = tgt.left;
 		tgt.left  = temp.right;
 		temp.right = tgt;
+		tgt.update();
+		temp.update();
 		return temp;
 	}
 	
@@ -74,6 +139,8 @@ public class AVLGTree<T extends Comparable<T>> {
 		Node temp = tgt.right;
 		tgt.right  = temp.left;
 		temp.left = tgt;
+		tgt.update();
+		temp.update();
 		return temp;
 	}
 	
@@ -92,51 +159,211 @@ public class AVLGTree<T extends Comparable<T>> {
     		return -1;
     	}
     	
-    	return obj.getHeight();
+    	return obj.height;
     }
     
-    private Node insertAux(T key, Node cur) {
-    	if (cur == null) {
-    		return new Node(null, null, key);
-    	} 
-    	
-    	if (key.compareTo(cur.key) < 0) {
-    		cur.left = insertAux(key, cur.left);
-    		if (height(cur.left) - height(cur.right) > g) {
-    			if (key.compareTo(cur.left.getKey()) < 0) {
-    				cur = rotateRight(cur);
-    			} else {
-    				cur = rotateLeftRight(cur);
-    			}
+    private int size(Node obj) {
+    	return (obj == null) ? 0 : obj.size;
+    }
+    
+    // Counts the keys smaller than key, or smaller than or equal to it if inclusive is set.
+    private int rankAux(T key, boolean inclusive) {
+    	int rank = 0;
+    	Node cur = root;
+    	while (cur != null) {
+    		int cmp = key.compareTo(cur.key);
+    		if (cmp < 0 || (cmp == 0 && !inclusive)) {
+    			cur = cur.left;
+    		} else {
+    			rank += size(cur.left) + 1;
+    			cur = cur.right;
     		}
+    	}
+    	return rank;
+    }
+    
+    // Every array of nodes or keys in this package is allocated here: Java can't create an array of a
+    // generic type directly, so this creates one of its erasure (Comparable, or Node) instead.
+    @SuppressWarnings("unchecked")
+    static <E> E[] newArray(Class<?> erasure, int length) {
+    	return (E[]) Array.newInstance(erasure, length);
+    }
+    
+    // Makes sure the path buffer can hold every node on a root-to-leaf path, plus one.
+    private void ensurePath() {
+    	int need = height(root) + 2;
+    	if (path.length < need) {
+    		path = newArray(Node.class, Math.max(need, 2 * path.length));
+    	}
+    }
+    
+    // Hooks repl into the slot that old occupied under path[depth - 1] (or the root).
+    private void replace(int depth, Node old, Node repl) {
+    	if (depth == 0) {
+    		root = repl;
+    	} else if (path[depth - 1].left == old) {
+    		path[depth - 1].left = repl;
     	} else {
-    		cur.right = insertAux(key, cur.right);
-    		if (height(cur.right) - height(cur.left) > g) {
-    			if (key.compareTo(cur.right.getKey()) > 0) {
-    				cur = rotateLeft(cur);
-    			} else {
-    				cur = rotateRightLeft(cur);
-    			}
+    		path[depth - 1].right = repl;
+    	}
+    }
+    
+    // Restores the AVL-G condition at cur, assuming its subtrees already satisfy it. When the
+    // taller child is perfectly balanced, a single rotation suffices and is preferred.
+    private Node rebalance(Node cur) {
+    	int bal = imbal(cur);
+    	if (bal > g || bal < -g) {
+    		rotations++;
+    	}
+    	if (bal > g) {
+    		boolean single = imbal(cur.left) >= 0;
+    		if (listener != null) {
+    			listener.rotated(single ? Rotation.RIGHT : Rotation.LEFT_RIGHT, cur.key, bal);
+    		}
+    		return single ? rotateRight(cur) : rotateLeftRight(cur);
+    	} else if (bal < -g) {
+    		boolean single = imbal(cur.right) <= 0;
+    		if (listener != null) {
+    			listener.rotated(single ? Rotation.LEFT : Rotation.RIGHT_LEFT, cur.key, bal);
     		}
+    		return single ? rotateLeft(cur) : rotateRightLeft(cur);
     	}
-    	
     	return cur;
     }
     
+    // Walks back up the first depth entries of the path buffer, refreshing heights and rotating
+    // where needed. Once a subtree's height comes out unchanged, nothing above it can rotate, so
+    // the rest of the path only needs its subtree sizes refreshed. Returns the number of nodes that
+    // were rebalanced.
+    private int rebalancePath(int depth) {
+    	int i = depth - 1;
+    	while (i >= 0) {
+    		Node cur = path[i];
+    		int old = cur.height;
+    		cur.update();
+    		Node fixed = rebalance(cur);
+    		if (fixed != cur) {
+    			replace(i, cur, fixed);
+    		}
+    		i--;
+    		if (fixed.height == old) {
+    			break;
+    		}
+    	}
+    	int rebalanced = depth - 1 - i;
+    	modCount++;
+    	for (; i >= 0; i--) {
+    		path[i].update();
+    	}
+    	Arrays.fill(path, 0, depth, null);
+    	return rebalanced;
+    }
+    
+    private void insertIter(T key) {
+    	ensurePath();
+    	int depth = 0;
+    	boolean left = false;
+    	Node cur = root;
+    	while (cur != null) {
+    		path[depth++] = cur;
+    		left = key.compareTo(cur.key) < 0;
+    		cur = left ? cur.left : cur.right;
+    	}
+    	hang(key, depth, left);
+    }
+    
+    // Hangs a new node for key under path[depth - 1] (or as the root), and rebalances the path above it.
+    private Node hang(T key, int depth, boolean left) {
+    	Node leaf = newLeaf(key);
+    	if (depth == 0) {
+    		root = leaf;
+    	} else if (left) {
+    		path[depth - 1].left = leaf;
+    	} else {
+    		path[depth - 1].right = leaf;
+    	}
+    	report(Operation.INSERT, depth, rebalancePath(depth));
+    	return leaf;
+    }
+    
+    // The single-descent updates of AVLGMap. locate() looks a key up, leaving the path to it in the path
+    // buffer; attach() or detach() then finish an insertion or a deletion from there, and releasePath()
+    // drops the path when the tree is not to change after all.
+    Node locate(T key) {
+    	ensurePath();
+    	located = 0;
+    	Node cur = root;
+    	while (cur != null) {
+    		int cmp = key.compareTo(cur.key);
+    		if (cmp == 0) {
+    			return cur;
+    		}
+    		path[located++] = cur;
+    		locatedLeft = cmp < 0;
+    		cur = locatedLeft ? cur.left : cur.right;
+    	}
+    	return null;
+    }
+    
+    Node attach(T key) {
+    	Node leaf = hang(key, located, locatedLeft);
+    	located = 0;
+    	size += 1;
+    	if (adaptive) {
+    		adapt(0, 1);
+    	}
+    	return leaf;
+    }
+    
+    void detach(Node cur) {
+    	unlink(cur, located);
+    	located = 0;
+    	size -= 1;
+    	if (adaptive) {
+    		adapt(0, 1);
+    	}
+    }
+    
+    void releasePath() {
+    	Arrays.fill(path, 0, located, null);
+    	located = 0;
+    }
+    
+    Node find(T key) {
+    	return foundAux(root, key);
+    }
+    
+    // Counts and reports a batch update once it has been merged, and returns the number of keys it changed.
+    private int batchDone(Operation op, int batchSize, int changed) {
+    	if (listener != null) {
+    		listener.batchApplied(op, batchSize, changed);
+    	}
+    	if (adaptive) {
+    		adapt(0, batchSize);
+    	}
+    	return changed;
+    }
+    
+    private void report(Operation op, int depth, int rebalanced) {
+    	if (listener != null) {
+    		listener.rebalanced(op, rebalanced);
+    		listener.depthReached(op, depth);
+    	}
+    }
+    
     private int imbal(Node cur) {
     	return height(cur.left) - height(cur.right);
     }
     
     private Node foundAux(Node cur, T key) {
-    	if (cur == null) {
-    		return null;
-    	} else if (cur.key.compareTo(key) == 0) {
-    		return cur;
-    	} else if (cur.key.compareTo(key) < 0){
-    		return foundAux(cur.right, key);
-    	} else {
-    		return foundAux(cur.left, key);
-    	}	
+    	while (cur != null) {
+    		int cmp = key.compareTo(cur.key);
+    		if (cmp == 0) {
+    			return cur;
+    		}
+    		cur = (cmp < 0) ? cur.left : cur.right;
+    	}
+    	return null;
     }
     
     private int maxImbalAux(Node cur) {
@@ -149,7 +376,7 @@ public class AVLGTree<T extends Comparable<T>> {
     		right = maxImbalAux(cur.right);
     	}
     	
-    	return Math.max(Math.max(left, right), imbal(cur));
+    	return Math.max(Math.max(left, right), Math.abs(imbal(cur)));
     }
     
     private boolean isBSTA(Node aux) {
@@ -165,64 +392,472 @@ public class AVLGTree<T extends Comparable<T>> {
 		}
     }
     
- // Due to its implementation in delete, this method is guranteed to have a 
-    // key that is in the tree
-    private Node deleteAux(T key, Node cur) {
+    // Removes one occurrence of key in a single descent, returning false if it was not there.
+    private boolean deleteIter(T key) {
+    	Node cur = locate(key);
     	if (cur == null) {
-    		return cur;
-    	} else if (key.compareTo(cur.key) < 0) {
-    		cur.left = deleteAux(key, cur.left);
-    	} else if (key.compareTo(cur.key) > 0) {
-    		cur.right = deleteAux(key, cur.right);
-    	} else {
-    		// cur is the node to delete
-    		Node swap = null;
-    		if (cur.left == null && cur.right == null) {
-    			swap = cur;
-    			cur = null;
-    		} else if (cur.left == null) {
-    			swap = cur.right;
-    			cur = swap;
-    		} else if(cur.right == null) {
-    			swap = cur.left;
-    			cur = swap;
-    		} else {
-    			swap = inOrder(cur.right);
-    			System.out.print(swap.key);
-    			cur.key = swap.key;
-    			cur.right = deleteAux(swap.key, cur.right);
+    		releasePath();
+    		return false;
+    	}
+    	unlink(cur, located);
+    	located = 0;
+    	return true;
+    }
+    
+    // Removes cur, whose ancestors fill path[0, depth), and rebalances.
+    private void unlink(Node cur, int depth) {
+    	if (cur.left != null && cur.right != null) {
+    		// Two children: pull up the inorder successor and unlink its node instead.
+    		path[depth++] = cur;
+    		Node swap = cur.right;
+    		while (swap.left != null) {
+    			path[depth++] = swap;
+    			swap = swap.left;
     		}
+    		cur.takeEntry(swap);
+    		cur = swap;
     	}
     	
+    	replace(depth, cur, (cur.left != null) ? cur.left : cur.right);
+    	report(Operation.DELETE, depth, rebalancePath(depth));
+    }
+
+
+    // Result of splitting a subtree around a key: the keys below it, the node that holds it (if any), and
+    // the keys above it.
+    private class Split {
+    	Node less, equal, greater;
+    }
+    
+    // Links l and r under mid, where every key of l is smaller than mid.key and every key of r is larger.
+    // We walk down the spine of the taller tree until the heights are within g of each other, hang mid
+    // there, and rotate on the way back up. This costs O(|height(l) - height(r)| + 1).
+    private Node joinAux(Node l, Node mid, Node r) {
+    	if (height(l) > height(r) + g) {
+    		l.right = joinAux(l.right, mid, r);
+    		l.update();
+    		return rebalance(l);
+    	} else if (height(r) > height(l) + g) {
+    		r.left = joinAux(l, mid, r.left);
+    		r.update();
+    		return rebalance(r);
+    	}
+    	
+    	mid.left = l;
+    	mid.right = r;
+    	mid.update();
+    	return mid;
+    }
+    
+    // Like joinAux, but without a pivot: the smallest node of r is taken out and used as one.
+    private Node join2(Node l, Node r) {
+    	if (l == null) {
+    		return r;
+    	} else if (r == null) {
+    		return l;
+    	}
+    	
+    	Node min = r;
+    	while (min.left != null) {
+    		min = min.left;
+    	}
+    	Split s = splitAux(r, min.key);
+    	return joinAux(l, s.equal, s.greater);
+    }
+    
+    // Takes the subtree of t apart around key. Every node on the search path is reused as the pivot of a
+    // join, so the only allocation is the result itself.
+    private Split splitAux(Node t, T key) {
+    	if (t == null) {
+    		return new Split();
+    	}
+    	
+    	int cmp = key.compareTo(t.key);
+    	if (cmp == 0) {
+    		Split s = new Split();
+    		s.less = t.left;
+    		s.equal = t;
+    		s.greater = t.right;
+    		return s;
+    	} else if (cmp < 0) {
+    		Split s = splitAux(t.left, key);
+    		s.greater = joinAux(s.greater, t, t.right);
+    		return s;
+    	} else {
+    		Split s = splitAux(t.right, key);
+    		s.less = joinAux(t.left, t, s.less);
+    		return s;
+    	}
+    }
+    
+    // The set operations below follow the join-based algorithms of Blelloch, Ferizovic and Sun, which
+    // take O(m log(n/m + 1)) time for trees of sizes m <= n. They consume the nodes of both arguments.
+    private Node unionAux(Node a, Node b) {
+    	if (a == null) {
+    		return b;
+    	} else if (b == null) {
+    		return a;
+    	}
+    	
+    	Split s = splitAux(b, a.key);
+    	Node l = unionAux(a.left, s.less);
+    	Node r = unionAux(a.right, s.greater);
+    	return joinAux(l, a, r);
+    }
+    
+    private Node intersectionAux(Node a, Node b) {
+    	if (a == null || b == null) {
+    		return null;
+    	}
+    	
+    	Split s = splitAux(b, a.key);
+    	Node l = intersectionAux(a.left, s.less);
+    	Node r = intersectionAux(a.right, s.greater);
+    	return (s.equal != null) ? joinAux(l, a, r) : join2(l, r);
+    }
+    
+    private Node differenceAux(Node a, Node b) {
+    	if (a == null) {
+    		return null;
+    	} else if (b == null) {
+    		return a;
+    	}
+    	
+    	Split s = splitAux(a, b.key);
+    	Node l = differenceAux(s.less, b.left);
+    	Node r = differenceAux(s.greater, b.right);
+    	return join2(l, r);
+    }
+    
+    // unionAux, with the two recursive calls forked off to run in parallel. They work on disjoint sets of
+    // nodes, so they need no synchronization.
+    private class UnionTask extends RecursiveTask<Node> {
+    	private static final long serialVersionUID = 1L;
+    	private final Node a, b;
+    	
+    	UnionTask(Node a, Node b) {
+    		this.a = a;
+    		this.b = b;
+    	}
+    	
+    	@Override
+    	protected Node compute() {
+    		if (a == null) {
+    			return b;
+    		} else if (b == null) {
+    			return a;
+    		} else if (size(a) + size(b) <= PARALLEL_THRESHOLD) {
+    			return unionAux(a, b);
+    		}
+    		
+    		Split s = splitAux(b, a.key);
+    		UnionTask left = new UnionTask(a.left, s.less);
+    		left.fork();
+    		Node r = new UnionTask(a.right, s.greater).compute();
+    		return joinAux(left.join(), a, r);
+    	}
+    }
+    
+    // Sorts a batch of keys, drops duplicates and builds them into a perfectly balanced subtree.
+    private Node buildBatch(Collection<? extends T> keys) {
+    	T[] batch = keys.toArray(AVLGTree.<T>newArray(Comparable.class, 0));
+    	Arrays.sort(batch);
+    	int n = 0;
+    	for (int i = 0; i < batch.length; i++) {
+    		if (n == 0 || batch[i].compareTo(batch[n - 1]) != 0) {
+    			batch[n++] = batch[i];
+    		}
+    	}
+    	return buildAux(Arrays.asList(batch).iterator(), n, newArray(Comparable.class, 1));
+    }
+    
+    // Stores the encoded size in bytes of every subtree of the MappedAVLGTree format, indexed by the
+    // pre-order position of its root, so that writeTo() knows where each right child will end up
+    // before it writes its parent.
+    private long measureAux(Node cur, int index, long[] bytes, KeyCodec<T> codec) {
     	if (cur == null) {
-    		return cur;
+    		return 0;
     	}
+    	bytes[index] = MappedAVLGTree.NODE_HEADER_SIZE + codec.encodedLength(cur.key)
+    			+ measureAux(cur.left, index + 1, bytes, codec)
+    			+ measureAux(cur.right, index + 1 + size(cur.left), bytes, codec);
+    	return bytes[index];
+    }
+    
+    // Writes the nodes in pre-order through a buffer, appending to the channel sequentially.
+    private class TreeWriter {
+    	private final FileChannel channel;
+    	private final KeyCodec<T> codec;
+    	private final long[] bytes;
+    	private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    	private long pos = 0;
     	
-    	if (imbal(cur) > g) {
-    		if (imbal(cur.left) >= 0) {
-    			return rotateRight(cur);
-    		} else {
-    			return rotateLeftRight(cur);
+    	TreeWriter(FileChannel channel, KeyCodec<T> codec, long[] bytes) {
+    		this.channel = channel;
+    		this.codec = codec;
+    		this.bytes = bytes;
+    	}
+    	
+    	void writeHeader() throws IOException {
+    		reserve(MappedAVLGTree.HEADER_SIZE);
+    		buffer.putInt(MappedAVLGTree.MAGIC).putInt(MappedAVLGTree.VERSION)
+    			  .putInt(g).putInt(size).putInt(height(root));
+    		pos += MappedAVLGTree.HEADER_SIZE;
+    	}
+    	
+    	void write(Node cur, int index) throws IOException {
+    		int length = MappedAVLGTree.NODE_HEADER_SIZE + codec.encodedLength(cur.key);
+    		long right = (cur.right == null) ? 0 : pos + length + ((cur.left == null) ? 0 : bytes[index + 1]);
+    		byte flags = (byte) (((cur.left != null) ? MappedAVLGTree.HAS_LEFT : 0)
+    				| ((cur.right != null) ? MappedAVLGTree.HAS_RIGHT : 0));
+    		
+    		reserve(length);
+    		buffer.put(flags).putInt((int) right);
+    		codec.encode(cur.key, buffer);
+    		pos += length;
+    		
+    		if (cur.left != null) {
+    			write(cur.left, index + 1);
+    		}
+    		if (cur.right != null) {
+    			write(cur.right, index + 1 + size(cur.left));
+    		}
+    	}
+    	
+    	private void reserve(int length) throws IOException {
+    		if (buffer.remaining() < length) {
+    			flush();
+    			if (buffer.capacity() < length) {
+    				buffer = ByteBuffer.allocate(length);
+    			}
+    		}
+    	}
+    	
+    	void flush() throws IOException {
+    		buffer.flip();
+    		while (buffer.hasRemaining()) {
+    			channel.write(buffer);
     		}
-    	} else if (imbal(cur) < -g) {
-    		if (imbal(cur.right) <= 0) {
-    			return rotateLeft(cur);
+    		buffer.clear();
+    	}
+    }
+    
+    // A new, empty tree with the same (already validated) balance parameter.
+    private AVLGTree<T> emptyCopy() {
+    	try {
+    		return new AVLGTree<>(g);
+    	} catch (InvalidBalanceException e) {
+    		throw new IllegalStateException(e);
+    	}
+    }
+    
+    // Points the finger back at the root, after a structural change has made it stale.
+    private void resetFinger() {
+    	int need = height(root) + 1;
+    	if (finger == null || finger.length < need) {
+    		finger = newArray(Node.class, need);
+    		fingerLo = new int[need];
+    		fingerHi = new int[need];
+    	} else {
+    		Arrays.fill(finger, null);
+    	}
+    	finger[0] = root;
+    	fingerLo[0] = fingerHi[0] = -1;
+    	fingerDepth = 1;
+    	fingerMod = modCount;
+    }
+    
+    // Moves the given nodes into a fresh tree like a, and empties the arguments whose nodes it took.
+    private static <T extends Comparable<T>> AVLGTree<T> adopt(AVLGTree<T> a, AVLGTree<T>.Node root, AVLGTree<T> b) {
+    	AVLGTree<T> result = a.emptyCopy();
+    	result.root = root;
+    	result.size = result.size(root);
+    	a.clear();
+    	b.clear();
+    	return result;
+    }
+    
+    private static void checkSameBalance(AVLGTree<?> a, AVLGTree<?> b) {
+    	if (a.g != b.g) {
+    		throw new IllegalArgumentException("Can't combine an AVL-" + a.g + " tree with an AVL-" + b.g + " tree");
+    	}
+    }
+    
+    // Single descent for floor, ceiling, lower and higher: remembers the last key passed on the correct
+    // side of key, unless key itself is stored and allowed.
+    private T nearestAux(T key, boolean below, boolean inclusive) {
+    	if (adaptive) {
+    		adapt(1, 0);
+    	}
+    	
+    	T best = null;
+    	Node cur = root;
+    	while (cur != null) {
+    		int cmp = key.compareTo(cur.key);
+    		if (cmp == 0 && inclusive) {
+    			return cur.key;
+    		} else if (below ? cmp > 0 : cmp < 0) {
+    			best = cur.key;
+    			cur = below ? cur.right : cur.left;
     		} else {
-    			return rotateRightLeft(cur);
+    			cur = below ? cur.left : cur.right;
     		}
     	}
+    	return best;
+    }
+    
+    // Unlinks the leftmost (or rightmost) node in a single descent and returns its key.
+    private T pollAux(boolean min) {
+    	ensurePath();
+    	int depth = 0;
+    	Node cur = root;
+    	for (Node next = min ? cur.left : cur.right; next != null; next = min ? cur.left : cur.right) {
+    		path[depth++] = cur;
+    		cur = next;
+    	}
     	
-		return cur;
+    	replace(depth, cur, min ? cur.right : cur.left);
+    	report(Operation.DELETE, depth, rebalancePath(depth));
+    	size -= 1;
+    	if (adaptive) {
+    		adapt(0, 1);
+    	}
+    	return cur.key;
     }
     
-    // For this private method, to find the inorder I'm giving a root of the tree and want
-    // to find the minimum value in said tree
-    private Node inOrder(Node cur) {
-    	while (cur.left != null) {
-    		cur = cur.left;
+    // Search for readers that do not hold a lock (see ConcurrentAVLGTree). Such a reader may observe the
+    // tree halfway through a rotation, where the pointers it follows could even form a cycle, so the descent
+    // is capped by the height it read at the start; a consistent tree never needs more steps than that.
+    // The caller has to validate the result, and has to expect runtime exceptions from half-built nodes.
+    T searchBounded(T key) {
+    	Node cur = root;
+    	for (int steps = height(cur); cur != null && steps >= 0; steps--) {
+    		int cmp = key.compareTo(cur.key);
+    		if (cmp == 0) {
+    			return key;
+    		}
+    		cur = (cmp < 0) ? cur.left : cur.right;
+    	}
+    	return null;
+    }
+    
+    // Called by every operation of an adaptive tree, with the number of searches and updates it stands for.
+    // At the end of each sampling window it looks at the mix of operations: a write-heavy window that keeps
+    // rotating raises g right away, since a looser bound holds for the tree as it is. A read-heavy window
+    // only lowers the target. The tree keeps its current, looser shape until enough operations have gone by
+    // to pay for an O(n) rebuild, which then establishes the target bound in one go. Searches close windows
+    // too, so a read-only phase can lower g, and neither counter grows past one window.
+    private void adapt(long read, long written) {
+    	reads += read;
+    	writes += written;
+    	long ops = reads + writes;
+    	if (ops < ADAPT_WINDOW) {
+    		return;
     	}
     	
-    	return cur;
+    	if (4 * writes >= 2 * ops && 4 * rotations >= writes) {
+    		// Only ever raise g here. If it is still above maxG, waiting for a rebuild into a narrowed
+    		// range, it stays there, and so does the lowering to maxG.
+    		if (g < maxG) {
+    			g++;
+    		}
+    		targetG = Math.min(g, maxG);
+    	} else if (10 * writes <= ops) {
+    		if (targetG == g) {
+    			pendingOps = 0;
+    		}
+    		targetG = Math.max(targetG - 1, minG);
+    	}
+    	pendingOps += ops;
+    	reads = writes = rotations = 0;
+    	
+    	if (targetG < g && pendingOps >= size) {
+    		rebuild();
+    		g = targetG;
+    	}
+    }
+    
+    // Replaces the tree with a perfectly balanced one over the same keys, which satisfies every g.
+    private void rebuild() {
+    	T[] keys = newArray(Comparable.class, size);
+    	int i = 0;
+    	for (T key : this) {
+    		keys[i++] = key;
+    	}
+    	root = buildAux(Arrays.asList(keys).iterator(), size, newArray(Comparable.class, 1));
+    	modCount++;
+    }
+    
+    // Builds a perfectly balanced tree out of the next n keys of a sorted iterator, consuming them in
+    // order. Sibling subtrees differ in size by at most one, so no rotation is ever needed.
+    private Node buildAux(Iterator<? extends T> keys, int n, T[] prev) {
+    	if (n == 0) {
+    		return null;
+    	}
+    	
+    	int leftSize = (n - 1) / 2;
+    	Node left = buildAux(keys, leftSize, prev);
+    	T key = keys.next();
+    	if (prev[0] != null && key.compareTo(prev[0]) < 0) {
+    		throw new IllegalArgumentException("Keys are not sorted: " + key + " follows " + prev[0]);
+    	}
+    	prev[0] = key;
+    	Node right = buildAux(keys, n - 1 - leftSize, prev);
+    	return new Node(left, right, key);
+    }
+    
+    // Lazy inorder walk over the keys in [lo, hi], where a null bound means "unbounded". It keeps
+    // only the pending ancestors of the next node on a stack, so it uses O(height) extra memory and
+    // does O(log n + m) work to produce m keys.
+    private class InOrderIterator implements Iterator<T> {
+    	private final ArrayDeque<Node> stack = new ArrayDeque<>();
+    	private final T lo, hi;
+    	private final boolean descending;
+    	
+    	InOrderIterator(T lo, T hi, boolean descending) {
+    		this.lo = lo;
+    		this.hi = hi;
+    		this.descending = descending;
+    		
+    		// Push the path to the first key inside the range, skipping subtrees that fall short of it.
+    		Node cur = root;
+    		while (cur != null) {
+    			if (descending ? (hi == null || cur.key.compareTo(hi) <= 0) 
+    					       : (lo == null || cur.key.compareTo(lo) >= 0)) {
+    				stack.push(cur);
+    				cur = descending ? cur.right : cur.left;
+    			} else {
+    				cur = descending ? cur.left : cur.right;
+    			}
+    		}
+    	}
+    	
+    	private void pushSpine(Node cur) {
+    		while (cur != null) {
+    			stack.push(cur);
+    			cur = descending ? cur.right : cur.left;
+    		}
+    	}
+    	
+    	@Override
+    	public boolean hasNext() {
+    		if (stack.isEmpty()) {
+    			return false;
+    		}
+    		T next = stack.peek().key;
+    		return descending ? (lo == null || next.compareTo(lo) >= 0) 
+    				          : (hi == null || next.compareTo(hi) <= 0);
+    	}
+    	
+    	@Override
+    	public T next() {
+    		if (!hasNext()) {
+    			throw new NoSuchElementException();
+    		}
+    		Node cur = stack.pop();
+    		pushSpine(descending ? cur.left : cur.right);
+    		return cur.key;
+    	}
     }
 
 
@@ -253,14 +888,11 @@ public class AVLGTree<T extends Comparable<T>> {
      * @param key The key to insert in the tree.
      */
     public void insert(T key) {
-    	// Empty Tree
-        if (root == null) {
-        	root = new Node(null, null, key);
-        } else {
-        	root = insertAux(key, root);
-        }
-    
+        insertIter(key);
         this.size += 1;
+        if (adaptive) {
+        	adapt(0, 1);
+        }
     }
 
     /**
@@ -272,13 +904,16 @@ public class AVLGTree<T extends Comparable<T>> {
     public T delete(T key) throws EmptyTreeException {
         if (size == 0)   {
         	throw new EmptyTreeException("Tried to delete on Empty Tree");
-        } else if (search(key) == null) {
-        	return null;
-        } else {
-        	root = deleteAux(key, root);
+        }
+        
+        boolean found = deleteIter(key);
+        if (found) {
         	size -= 1;
-        	return key;
         }
+        if (adaptive) {
+        	adapt(0, 1);
+        }
+        return found ? key : null;
     }
     
     /**
@@ -293,12 +928,86 @@ public class AVLGTree<T extends Comparable<T>> {
     		throw new EmptyTreeException("This is empty?>?>?>");
     	}
     	
-    	return (foundAux(root, key) != null) ? key : null;
+    	if (adaptive) {
+    		adapt(1, 0);
+    	}
+    	if (listener == null) {
+    		return (foundAux(root, key) != null) ? key : null;
+    	}
+    	
+    	// Same descent as foundAux, but counting levels for the listener.
+    	int depth = 0;
+    	for (Node cur = root; cur != null; depth++) {
+    		int cmp = key.compareTo(cur.key);
+    		if (cmp == 0) {
+    			listener.depthReached(Operation.SEARCH, depth);
+    			return key;
+    		}
+    		cur = (cmp < 0) ? cur.left : cur.right;
+    	}
+    	listener.depthReached(Operation.SEARCH, depth);
+    	return null;
+    }
+
+    /**
+     * <p>Search for key starting from the <em>finger</em>, the node where the previous call to this method ended,
+     * instead of from the root. The search first climbs back up from the finger until it reaches a subtree whose
+     * key range contains key, jumping straight to the ancestor that bounds the range each time, and then descends
+     * from there as usual, leaving the finger where it stops. When consecutive keys are close to each other, as
+     * in sequential scans or skewed workloads, the search only touches the small subtree around the finger, and
+     * not a whole root-to-leaf path.</p>
+     *
+     * <p>The finger is dropped, and the next search starts from the root, whenever the tree changes shape.</p>
+     * @param key The key to search for.
+     * @return key if key is in the tree, or {@code null} otherwise.
+     * @throws EmptyTreeException if the tree is empty.
+     * @see #search(Comparable)
+     */
+    public T fingerSearch(T key) throws EmptyTreeException {
+    	if (root == null) {
+    		throw new EmptyTreeException("Tried to search on Empty Tree");
+    	}
+    	
+    	if (adaptive) {
+    		adapt(1, 0);
+    	}
+    	int i = fingerDepth - 1;
+    	if (finger == null || fingerMod != modCount) {
+    		resetFinger();
+    		i = 0;
+    	}
+    	while (i > 0) {
+    		if (fingerLo[i] >= 0 && key.compareTo(finger[fingerLo[i]].key) <= 0) {
+    			i = fingerLo[i];
+    		} else if (fingerHi[i] >= 0 && key.compareTo(finger[fingerHi[i]].key) >= 0) {
+    			i = fingerHi[i];
+    		} else {
+    			break;
+    		}
+    	}
+    	
+    	for (Node cur = finger[i]; ; i++) {
+    		int cmp = key.compareTo(cur.key);
+    		Node next = (cmp < 0) ? cur.left : cur.right;
+    		if (cmp == 0 || next == null) {
+    			fingerDepth = i + 1;
+    			if (listener != null) {
+    				listener.depthReached(Operation.SEARCH, (cmp == 0) ? i : i + 1);
+    			}
+    			return (cmp == 0) ? key : null;
+    		}
+    		finger[i + 1] = next;
+    		fingerLo[i + 1] = (cmp < 0) ? fingerLo[i] : i;
+    		fingerHi[i + 1] = (cmp < 0) ? i : fingerHi[i];
+    		cur = next;
+    	}
     }
 
     /**
      * Retrieves the maximum imbalance parameter.
-     * @return The maximum imbalance parameter provided as a constructor parameter.
+     * @return The maximum imbalance parameter provided as a constructor parameter, or the one currently in force
+     * if adaptive balancing has changed it.
+     * @see #enableAdaptiveBalance(int, int)
      */
     public int getMaxImbalance(){
         return g;
@@ -369,6 +1078,8 @@ public class AVLGTree<T extends Comparable<T>> {
     public void clear(){
         root = null;
         size = 0;
+        finger = null;
+        modCount++;
     }
 
 
@@ -379,5 +1090,496 @@ public class AVLGTree<T extends Comparable<T>> {
     public int getCount(){
     	return size;
     }
-}
 
+    /**
+     * <p>Return the key of the given rank, that is, the key that has exactly k keys smaller than it in the tree.
+     * Ranks start at 0, so {@code select(0)} is the smallest key and {@code select(getCount() - 1)} the largest.</p>
+     * @param k The rank of the key to retrieve.
+     * @return The key of rank k.
+     * @throws EmptyTreeException if the tree is empty.
+     * @throws IndexOutOfBoundsException if k is negative, or not smaller than {@link #getCount()}.
+     */
+    public T select(int k) throws EmptyTreeException {
+    	if (size == 0) {
+    		throw new EmptyTreeException("Can't select from Empty Tree");
+    	} else if (k < 0 || k >= size) {
+    		throw new IndexOutOfBoundsException("Rank " + k + " out of bounds for " + size + " keys");
+    	}
+    	
+    	Node cur = root;
+    	while (true) {
+    		int left = size(cur.left);
+    		if (k < left) {
+    			cur = cur.left;
+    		} else if (k == left) {
+    			return cur.key;
+    		} else {
+    			k -= left + 1;
+    			cur = cur.right;
+    		}
+    	}
+    }
+
+    /**
+     * <p>Return the number of keys in the tree that are strictly smaller than key. The key itself need not be
+     * stored in the tree. For a stored key, this is the inverse of {@link #select(int)}.</p>
+     * @param key The key whose rank we are looking for.
+     * @return The number of keys smaller than key.
+     */
+    public int rank(T key) {
+    	return rankAux(key, false);
+    }
+
+    /**
+     * <p>Return the number of keys in the tree that lie in the closed range [lo, hi].</p>
+     * @param lo The lower end of the range, inclusive.
+     * @param hi The upper end of the range, inclusive.
+     * @return The number of keys k with lo &lt;= k &lt;= hi, or 0 if lo is greater than hi.
+     */
+    public int countInRange(T lo, T hi) {
+    	if (lo.compareTo(hi) > 0) {
+    		return 0;
+    	}
+    	return rankAux(hi, true) - rankAux(lo, false);
+    }
+
+    /**
+     * <p>Return a lazy {@link Iterator} over the keys of the tree in ascending order. The iterator only
+     * keeps a stack of O(height) nodes, so the tree is never copied.</p>
+     *
+     * <p>The iterator does <b>not</b> support {@link Iterator#remove()}, and its behavior is unspecified if the
+     * tree is modified while the iteration is in progress.</p>
+     * @return An ascending {@link Iterator} over the keys of the tree.
+     */
+    @Override
+    public Iterator<T> iterator() {
+    	return new InOrderIterator(null, null, false);
+    }
+
+    /**
+     * <p>Return a lazy {@link Iterator} over the keys of the tree in descending order. Everything said
+     * in {@link #iterator()} applies here as well.</p>
+     * @return A descending {@link Iterator} over the keys of the tree.
+     */
+    public Iterator<T> descendingIterator() {
+    	return new InOrderIterator(null, null, true);
+    }
+
+    /**
+     * <p>Return a lazy {@link Iterator} over the keys of the tree that lie in the closed range [lo, hi], in
+     * ascending order. Producing m keys takes O(log n + m) time. Everything said in {@link #iterator()}
+     * applies here as well.</p>
+     * @param lo The lower end of the range, inclusive.
+     * @param hi The upper end of the range, inclusive.
+     * @return An ascending {@link Iterator} over the keys k with lo &lt;= k &lt;= hi. It is empty if lo is
+     * greater than hi.
+     */
+    public Iterator<T> range(T lo, T hi) {
+    	return new InOrderIterator(lo, hi, false);
+    }
+
+    /**
+     * <p>Build an AVL-G tree out of keys that are already sorted in ascending order. The tree is built bottom-up
+     * in O(n) time, without any comparisons beyond the ones that verify the order of the input and without
+     * any rotations. The result is perfectly balanced, so it satisfies the AVL-G condition for every G.</p>
+     * @param maxImbalance The maximum imbalance allowed by the AVL-G Tree.
+     * @param keys The keys to store, sorted in ascending order.
+     * @param <T> The type of the keys.
+     * @return A new AVL-G tree that holds exactly the given keys.
+     * @throws InvalidBalanceException if maxImbalance is a value smaller than 1.
+     * @throws IllegalArgumentException if the keys are not sorted.
+     */
+    public static <T extends Comparable<T>> AVLGTree<T> fromSorted(int maxImbalance, T[] keys) throws InvalidBalanceException {
+    	return fromSorted(maxImbalance, Arrays.asList(keys).iterator(), keys.length);
+    }
+
+    /**
+     * <p>Build an AVL-G tree out of the first count keys of an {@link Iterator} that produces them in ascending
+     * order. The keys are consumed one by one, so they never have to be materialized in a collection. See
+     * {@link #fromSorted(int, Comparable[])} for the guarantees on the result.</p>
+     * @param maxImbalance The maximum imbalance allowed by the AVL-G Tree.
+     * @param keys An {@link Iterator} producing at least count keys in ascending order.
+     * @param count The number of keys to take from the iterator.
+     * @param <T> The type of the keys.
+     * @return A new AVL-G tree that holds exactly the first count keys of the iterator.
+     * @throws InvalidBalanceException if maxImbalance is a value smaller than 1.
+     * @throws IllegalArgumentException if count is negative, or if the keys are not sorted.
+     * @throws NoSuchElementException if the iterator produces fewer than count keys.
+     */
+    public static <T extends Comparable<T>> AVLGTree<T> fromSorted(int maxImbalance, Iterator<? extends T> keys, int count)
+    		throws InvalidBalanceException {
+    	if (count < 0) {
+    		throw new IllegalArgumentException("Negative key count: " + count);
+    	}
+    	
+    	AVLGTree<T> tree = new AVLGTree<>(maxImbalance);
+    	tree.root = tree.buildAux(keys, count, newArray(Comparable.class, 1));
+    	tree.size = count;
+    	return tree;
+    }
+
+    /**
+     * <p>Build an AVL-G tree out of keys in arbitrary order. The keys are copied and sorted with
+     * {@link Arrays#parallelSort(Comparable[])}, which spreads the O(n log n) sorting work over all
+     * available cores, and the tree is then built as in {@link #fromSorted(int, Comparable[])}. The given
+     * array is left untouched.</p>
+     * @param maxImbalance The maximum imbalance allowed by the AVL-G Tree.
+     * @param keys The keys to store, in any order.
+     * @param <T> The type of the keys.
+     * @return A new AVL-G tree that holds exactly the given keys.
+     * @throws InvalidBalanceException if maxImbalance is a value smaller than 1.
+     */
+    public static <T extends Comparable<T>> AVLGTree<T> fromUnsorted(int maxImbalance, T[] keys) throws InvalidBalanceException {
+    	T[] sorted = Arrays.copyOf(keys, keys.length);
+    	Arrays.parallelSort(sorted);
+    	return fromSorted(maxImbalance, sorted);
+    }
+
+    /**
+     * <p>Split the tree around key. After the call, this tree holds the keys that are strictly smaller than key,
+     * and the returned tree holds the rest, with key itself if it was stored. Both trees satisfy the AVL-G
+     * condition. The split takes O(log n) time, and moves nodes instead of copying them.</p>
+     * @param key The key to split around. It need not be stored in the tree.
+     * @return A tree with the same maximum imbalance, which holds every key greater than or equal to key.
+     */
+    public AVLGTree<T> split(T key) {
+    	Split s = splitAux(root, key);
+    	AVLGTree<T> greater = emptyCopy();
+    	greater.root = (s.equal != null) ? joinAux(null, s.equal, s.greater) : s.greater;
+    	greater.size = size(greater.root);
+    	root = s.less;
+    	size = size(root);
+    	modCount++;
+    	return greater;
+    }
+
+    /**
+     * <p>Join two trees around a pivot key into a single tree, in O(|h<sub>left</sub> - h<sub>right</sub>| + 1)
+     * time. Every key of left must be smaller than pivot, and every key of right must be larger. The nodes of the
+     * arguments are moved into the result, so both arguments are left empty.</p>
+     * @param left A tree whose keys are all smaller than pivot.
+     * @param pivot The key that goes between the two trees.
+     * @param right A tree whose keys are all larger than pivot, with the same maximum imbalance as left.
+     * @param <T> The type of the keys.
+     * @return A tree that holds the keys of left, pivot, and the keys of right.
+     * @throws IllegalArgumentException if the two trees have different maximum imbalances, or if their keys are
+     * not separated by pivot.
+     */
+    public static <T extends Comparable<T>> AVLGTree<T> join(AVLGTree<T> left, T pivot, AVLGTree<T> right) {
+    	checkSameBalance(left, right);
+    	AVLGTree<T>.Node max = left.root, min = right.root;
+    	while (max != null && max.right != null) {
+    		max = max.right;
+    	}
+    	while (min != null && min.left != null) {
+    		min = min.left;
+    	}
+    	if ((max != null && max.key.compareTo(pivot) >= 0) || (min != null && min.key.compareTo(pivot) <= 0)) {
+    		throw new IllegalArgumentException("The pivot " + pivot + " does not separate the two trees");
+    	}
+    	
+    	return adopt(left, left.joinAux(left.root, left.new Node(null, null, pivot), right.root), right);
+    }
+
+    /**
+     * <p>Compute the union of two trees, treating them as sets. For trees of sizes m &lt;= n, this takes
+     * O(m log(n/m + 1)) time, which is much less than inserting the keys of one tree into the other. The
+     * nodes of the arguments are moved into the result, so both arguments are left empty.</p>
+     * @param a The first tree.
+     * @param b The second tree, with the same maximum imbalance as a.
+     * @param <T> The type of the keys.
+     * @return A tree that holds every key that is in a or in b.
+     * @throws IllegalArgumentException if the two trees have different maximum imbalances.
+     * @see #parallelUnion(AVLGTree, AVLGTree)
+     */
+    public static <T extends Comparable<T>> AVLGTree<T> union(AVLGTree<T> a, AVLGTree<T> b) {
+    	checkSameBalance(a, b);
+    	return adopt(a, a.unionAux(a.root, b.root), b);
+    }
+
+    /**
+     * <p>Compute the union of two trees like {@link #union(AVLGTree, AVLGTree)}, but fork the independent halves
+     * of the work off to the common {@link ForkJoinPool}. Small subproblems are solved sequentially.</p>
+     * @param a The first tree.
+     * @param b The second tree, with the same maximum imbalance as a.
+     * @param <T> The type of the keys.
+     * @return A tree that holds every key that is in a or in b.
+     * @throws IllegalArgumentException if the two trees have different maximum imbalances.
+     */
+    public static <T extends Comparable<T>> AVLGTree<T> parallelUnion(AVLGTree<T> a, AVLGTree<T> b) {
+    	checkSameBalance(a, b);
+    	return adopt(a, ForkJoinPool.commonPool().invoke(a.new UnionTask(a.root, b.root)), b);
+    }
+
+    /**
+     * <p>Compute the intersection of two trees, treating them as sets, in O(m log(n/m + 1)) time. Both
+     * arguments are left empty.</p>
+     * @param a The first tree.
+     * @param b The second tree, with the same maximum imbalance as a.
+     * @param <T> The type of the keys.
+     * @return A tree that holds every key that is both in a and in b.
+     * @throws IllegalArgumentException if the two trees have different maximum imbalances.
+     */
+    public static <T extends Comparable<T>> AVLGTree<T> intersection(AVLGTree<T> a, AVLGTree<T> b) {
+    	checkSameBalance(a, b);
+    	return adopt(a, a.intersectionAux(a.root, b.root), b);
+    }
+
+    /**
+     * <p>Compute the difference of two trees, treating them as sets, in O(m log(n/m + 1)) time. Both
+     * arguments are left empty.</p>
+     * @param a The tree to remove keys from.
+     * @param b The tree of keys to remove, with the same maximum imbalance as a.
+     * @param <T> The type of the keys.
+     * @return A tree that holds every key that is in a but not in b.
+     * @throws IllegalArgumentException if the two trees have different maximum imbalances.
+     */
+    public static <T extends Comparable<T>> AVLGTree<T> difference(AVLGTree<T> a, AVLGTree<T> b) {
+    	checkSameBalance(a, b);
+    	return adopt(a, a.differenceAux(a.root, b.root), b);
+    }
+
+    /**
+     * <p>Install a listener that will be told about the rotations, rebalancing passes and depths of the operations
+     * of this tree, or remove the current one.</p>
+     * @param listener The {@link AVLGTreeListener} to notify, or {@code null} to stop reporting. Without a
+     *                 listener, no reporting work is done at all.
+     */
+    public void setListener(AVLGTreeListener<? super T> listener) {
+    	this.listener = listener;
+    }
+
+    /**
+     * <p>Let the tree pick its own maximum imbalance G within [minImbalance, maxImbalance], based on the
+     * operations it sees. The tree samples windows of a few thousand operations and counts insertions and
+     * deletions, searches and rotations:</p>
+     *  <ul>
+     *      <li>When updates dominate and keep causing rotations, G is raised by one. This takes effect
+     *      immediately, since a tree that satisfies the AVL-G condition also satisfies the AVL-(G+1) one.</li>
+     *      <li>When searches dominate, G should go down by one to make the tree shallower. This is done
+     *      <em>lazily</em>: the tree keeps its current G until it has processed at least as many operations
+     *      as it holds keys since the lowering was first requested, and then rebuilds itself in O(n) into a
+     *      perfectly balanced tree. The cost of the rebuild is thus amortized over those operations, and if
+     *      the workload keeps reading in the meantime, G may drop by several steps at once.</li>
+     *  </ul>
+     * <p>If the current G is above maxImbalance, it is brought down into the range in the same lazy way, and it
+     * is not raised in the meantime.</p>
+     * <p>At any time, {@link #getMaxImbalance()} reports the G in force, and {@link #isAVLGBalanced()} holds
+     * for it. Any operation may end a sampling window, so on an adaptive tree even a search can change G and
+     * rebuild the tree; like every other method, searches must not run concurrently with each other then.</p>
+     * @param minImbalance The smallest G the tree may pick.
+     * @param maxImbalance The largest G the tree may pick.
+     * @throws InvalidBalanceException if minImbalance is a value smaller than 1, or larger than maxImbalance.
+     */
+    public void enableAdaptiveBalance(int minImbalance, int maxImbalance) throws InvalidBalanceException {
+    	if (minImbalance < 1 || maxImbalance < minImbalance) {
+    		throw new InvalidBalanceException("Invalid adaptive balance range [" + minImbalance + ", " + maxImbalance + "]");
+    	}
+    	
+    	adaptive = true;
+    	minG = minImbalance;
+    	maxG = maxImbalance;
+    	g = Math.max(g, minG);
+    	targetG = Math.min(g, maxG); // Lowered lazily if g is above the new range
+    	reads = writes = rotations = 0;
+    	pendingOps = 0;
+    }
+
+    /**
+     * <p>Stop adapting the maximum imbalance. The tree keeps the G that is in force at the time of the call,
+     * and any pending lowering of G is dropped.</p>
+     */
+    public void disableAdaptiveBalance() {
+    	adaptive = false;
+    }
+
+    /**
+     * <p>Insert a whole batch of keys at once. The batch is sorted and built into a balanced tree of its own, which is
+     * then merged into this tree in a single top-down pass (see {@link #union(AVLGTree, AVLGTree)}). Each subtree
+     * that the merge touches is rebalanced once, instead of once per key. For a batch of m keys, this costs
+     * O(m log m) for the sort plus O(m log(n/m + 1)) for the merge, which is much less than m separate
+     * insertions when m is large.</p>
+     *
+     * <p>Duplicates are dropped silently: keys that are already in the tree, or that appear more than once in the
+     * batch, are stored only once, and only the keys actually added are counted in the result. This differs from
+     * {@link #insert(Comparable)}, which does not look for the key first and stores it again.</p>
+     *
+     * <p>Like single insertions, every key of the batch counts as one update for adaptive balancing, and a
+     * listener is told about the batch through {@link AVLGTreeListener#batchApplied(Operation, int, int)}.</p>
+     * @param keys The keys to insert, in any order.
+     * @return The number of keys that were actually added to the tree.
+     */
+    public int insertAll(Collection<? extends T> keys) {
+    	int before = size;
+    	root = unionAux(root, buildBatch(keys));
+    	size = size(root);
+    	modCount++;
+    	return batchDone(Operation.INSERT, keys.size(), size - before);
+    }
+
+    /**
+     * <p>Delete a whole batch of keys at once. As in {@link #insertAll(Collection)}, the batch is sorted, built into
+     * a balanced tree, and taken out of this tree in a single top-down pass (see
+     * {@link #difference(AVLGTree, AVLGTree)}). Keys of the batch that are not in the tree, and repeats within the
+     * batch, are ignored silently. Updates are counted and reported as in {@link #insertAll(Collection)}.</p>
+     * @param keys The keys to delete, in any order.
+     * @return The number of keys that were actually removed from the tree.
+     */
+    public int deleteAll(Collection<? extends T> keys) {
+    	int before = size;
+    	root = differenceAux(root, buildBatch(keys));
+    	size = size(root);
+    	modCount++;
+    	return batchDone(Operation.DELETE, keys.size(), before - size);
+    }
+
+    /**
+     * <p>Save the tree to a file in the format read by {@link MappedAVLGTree}, keeping its exact shape. The file is
+     * written sequentially, in a single pass over the tree after a first pass that measures the subtrees. It can
+     * then be opened with {@link MappedAVLGTree#open(Path, KeyCodec)} and searched without loading it.</p>
+     * @param file The file to write. It is created if needed, and overwritten if it exists.
+     * @param codec The {@link KeyCodec} that turns keys into bytes.
+     * @throws IOException if the file cannot be written, or if the tree would take up 2GB or more.
+     */
+    public void writeTo(Path file, KeyCodec<T> codec) throws IOException {
+    	long[] bytes = new long[size];
+    	long total = MappedAVLGTree.HEADER_SIZE + measureAux(root, 0, bytes, codec);
+    	if (total > Integer.MAX_VALUE) {
+    		throw new IOException("AVL-G tree too large to map: " + total + " bytes");
+    	}
+    	
+    	try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+    			StandardOpenOption.TRUNCATE_EXISTING)) {
+    		TreeWriter writer = new TreeWriter(channel, codec, bytes);
+    		writer.writeHeader();
+    		if (root != null) {
+    			writer.write(root, 0);
+    		}
+    		writer.flush();
+    	}
+    }
+
+    /**
+     * <p>Take an immutable, read-only copy of the tree, packed into arrays in van Emde Boas order. The copy answers
+     * searches, floor and ceiling queries and range scans while touching far fewer cache lines than this tree,
+     * so it is the better choice for a tree that has been built and will only be queried from now on. Later
+     * changes to this tree do not affect the copy. Freezing takes O(n) time (see {@link FrozenAVLGTree}).</p>
+     * @return A {@link FrozenAVLGTree} with the keys of this tree.
+     */
+    public FrozenAVLGTree<T> freeze() {
+    	T[] keys = newArray(Comparable.class, size);
+    	int i = 0;
+    	for (T key : this) {
+    		keys[i++] = key;
+    	}
+    	return new FrozenAVLGTree<>(keys);
+    }
+
+    /**
+     * Return the largest key in the tree that is smaller than or equal to key, in a single descent.
+     * @param key The key to look up. It need not be stored in the tree.
+     * @return The greatest stored key &lt;= key, or {@code null} if there is none.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public T floor(T key) throws EmptyTreeException {
+    	if (root == null) {
+    		throw new EmptyTreeException("Tried to query an Empty Tree");
+    	}
+    	return nearestAux(key, true, true);
+    }
+
+    /**
+     * Return the smallest key in the tree that is larger than or equal to key, in a single descent.
+     * @param key The key to look up. It need not be stored in the tree.
+     * @return The least stored key &gt;= key, or {@code null} if there is none.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public T ceiling(T key) throws EmptyTreeException {
+    	if (root == null) {
+    		throw new EmptyTreeException("Tried to query an Empty Tree");
+    	}
+    	return nearestAux(key, false, true);
+    }
+
+    /**
+     * Return the largest key in the tree that is strictly smaller than key (its predecessor), in a single descent.
+     * @param key The key to look up. It need not be stored in the tree.
+     * @return The greatest stored key &lt; key, or {@code null} if there is none.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public T lower(T key) throws EmptyTreeException {
+    	if (root == null) {
+    		throw new EmptyTreeException("Tried to query an Empty Tree");
+    	}
+    	return nearestAux(key, true, false);
+    }
+
+    /**
+     * Return the smallest key in the tree that is strictly larger than key (its successor), in a single descent.
+     * @param key The key to look up. It need not be stored in the tree.
+     * @return The least stored key &gt; key, or {@code null} if there is none.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public T higher(T key) throws EmptyTreeException {
+    	if (root == null) {
+    		throw new EmptyTreeException("Tried to query an Empty Tree");
+    	}
+    	return nearestAux(key, false, false);
+    }
+
+    /**
+     * Return the smallest key in the tree.
+     * @return The smallest key in the tree.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public T min() throws EmptyTreeException {
+    	if (root == null) {
+    		throw new EmptyTreeException("Can't get the minimum of an Empty Tree");
+    	}
+    	Node cur = root;
+    	while (cur.left != null) {
+    		cur = cur.left;
+    	}
+    	return cur.key;
+    }
+
+    /**
+     * Return the largest key in the tree.
+     * @return The largest key in the tree.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public T max() throws EmptyTreeException {
+    	if (root == null) {
+    		throw new EmptyTreeException("Can't get the maximum of an Empty Tree");
+    	}
+    	Node cur = root;
+    	while (cur.right != null) {
+    		cur = cur.right;
+    	}
+    	return cur.key;
+    }
+
+    /**
+     * Remove the smallest key from the tree and return it. The key is found and unlinked in the same descent.
+     * @return The key that was removed.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public T pollMin() throws EmptyTreeException {
+    	if (root == null) {
+    		throw new EmptyTreeException("Tried to delete on Empty Tree");
+    	}
+    	return pollAux(true);
+    }
+
+    /**
+     * Remove the largest key from the tree and return it. The key is found and unlinked in the same descent.
+     * @return The key that was removed.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public T pollMax() throws EmptyTreeException {
+    	if (root == null) {
+    		throw new EmptyTreeException("Tried to delete on Empty Tree");
+    	}
+    	return pollAux(false);
+    }
+}
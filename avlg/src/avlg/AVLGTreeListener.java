@@ -0,0 +1,73 @@
+package avlg;
+
+/**
+ * <p>{@link AVLGTreeListener} receives notifications about the internal work of an {@link AVLGTree}: the rotations
+ * it performs, how far up the tree each update has to go to restore balance, and how deep each operation reaches.
+ * This is meant for profiling how different values of G trade rotations against search depth, without
+ * printing anything from the tree itself.</p>
+ *
+ * <p>A tree without a listener (the default) skips all of this bookkeeping, so listening costs nothing when it
+ * is disabled. Every method has an empty default implementation, so implementations only need to override the
+ * notifications they care about. Listeners are called synchronously, in the middle of tree operations, so they
+ * should be quick and must <b>not</b> modify the tree.</p>
+ *
+ * @author Joe Barresi
+ *
+ * @see AVLGTree#setListener(AVLGTreeListener)
+ */
+public interface AVLGTreeListener<T> {
+
+	/**
+	 * The kinds of rotations that an {@link AVLGTree} performs.
+	 */
+	enum Rotation {
+		LEFT, RIGHT, LEFT_RIGHT, RIGHT_LEFT
+	}
+
+	/**
+	 * The operations that report to a listener.
+	 */
+	enum Operation {
+		INSERT, DELETE, SEARCH
+	}
+
+	/**
+	 * Called whenever the tree rotates about a node.
+	 * @param rotation The kind of the rotation.
+	 * @param key The key of the node that the tree rotated about, i.e. the topmost node that was out of balance.
+	 * @param imbalance The balance of that node right before the rotation, which is outside [-G, G].
+	 */
+	default void rotated(Rotation rotation, T key, int imbalance) {
+	}
+
+	/**
+	 * Called after an insertion or a deletion has restored balance.
+	 * @param operation Either {@link Operation#INSERT} or {@link Operation#DELETE}.
+	 * @param pathLength The number of nodes whose heights had to be recomputed (and possibly rotated) on the way
+	 *                   back up, before a subtree turned out to have the same height as before the update.
+	 */
+	default void rebalanced(Operation operation, int pathLength) {
+	}
+
+	/**
+	 * Called after {@link AVLGTree#insertAll(java.util.Collection)} or {@link AVLGTree#deleteAll(java.util.Collection)}
+	 * has merged a whole batch into the tree. Batches take no single path, so they report this instead of
+	 * {@link #rebalanced(Operation, int)} and {@link #depthReached(Operation, int)}; their rotations are reported
+	 * one by one as usual.
+	 * @param operation Either {@link Operation#INSERT} or {@link Operation#DELETE}.
+	 * @param batchSize The number of keys in the batch, duplicates included.
+	 * @param changed The number of keys that were actually added to or removed from the tree.
+	 */
+	default void batchApplied(Operation operation, int batchSize, int changed) {
+	}
+
+	/**
+	 * Called at the end of every insertion, deletion and search.
+	 * @param operation The operation that just completed.
+	 * @param depth The depth of the position where the operation ended: the new leaf for insertions, the unlinked
+	 *              node for deletions, and the node found (or the empty subtree where the search gave up) for searches.
+	 *              The root is at depth 0.
+	 */
+	default void depthReached(Operation operation, int depth) {
+	}
+}
@@ -0,0 +1,176 @@
+package avlg;
+
+import avlg.exceptions.EmptyTreeException;
+import avlg.exceptions.InvalidBalanceException;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * <p>{@link ConcurrentAVLGTree} is a thread-safe wrapper around an {@link AVLGTree}, tuned for workloads where
+ * searches vastly outnumber updates. Writers ({@link #insert(Comparable)}, {@link #delete(Comparable)} and
+ * {@link #clear()}) serialize on the write side of a {@link StampedLock}.</p>
+ *
+ * <p>{@link #search(Comparable)} does not lock at all in the common case. It takes an <em>optimistic</em> stamp,
+ * walks the tree, and then validates the stamp. Only if a writer got in the way, which may have moved nodes
+ * around under the reader through a rotation, is the search repeated under the read lock. Readers therefore
+ * never block each other, and block behind a writer only if they actually raced with it.</p>
+ *
+ * @author Joe Barresi
+ *
+ * @see AVLGTree
+ * @see StampedLock
+ */
+public class ConcurrentAVLGTree<T extends Comparable<T>> {
+
+	private final AVLGTree<T> tree;
+	private final StampedLock lock;
+
+	/**
+	 * The class constructor provides the tree with the maximum imbalance allowed.
+	 * @param maxImbalance The maximum imbalance allowed by the AVL-G Tree.
+	 * @throws InvalidBalanceException if maxImbalance is a value smaller than 1.
+	 */
+	public ConcurrentAVLGTree(int maxImbalance) throws InvalidBalanceException {
+		tree = new AVLGTree<>(maxImbalance);
+		lock = new StampedLock();
+	}
+
+	/**
+	 * Insert key in the tree, waiting for any other writer and for readers that hold the read lock.
+	 * @param key The key to insert in the tree.
+	 * @see AVLGTree#insert(Comparable)
+	 */
+	public void insert(T key) {
+		long stamp = lock.writeLock();
+		try {
+			tree.insert(key);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Delete the key from the data structure and return it to the caller, waiting for any other writer and
+	 * for readers that hold the read lock.
+	 * @param key The key to delete from the structure.
+	 * @return The key that was removed, or {@code null} if the key was not found.
+	 * @throws EmptyTreeException if the tree is empty.
+	 * @see AVLGTree#delete(Comparable)
+	 */
+	public T delete(T key) throws EmptyTreeException {
+		long stamp = lock.writeLock();
+		try {
+			return tree.delete(key);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * <p>Search for key in the tree. Return a reference to it if it's in there, or {@code null} otherwise.
+	 * The search first runs without any lock, and is only repeated under the read lock if a writer modified
+	 * the tree while it was running.</p>
+	 * @param key The key to search for.
+	 * @return key if key is in the tree, or {@code null} otherwise.
+	 * @throws EmptyTreeException if the tree is empty.
+	 * @see AVLGTree#search(Comparable)
+	 */
+	public T search(T key) throws EmptyTreeException {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			try {
+				boolean empty = tree.isEmpty();
+				T found = empty ? null : tree.searchBounded(key);
+				if (lock.validate(stamp)) {
+					if (empty) {
+						throw new EmptyTreeException("This is empty?>?>?>");
+					}
+					return found;
+				}
+			} catch (RuntimeException e) {
+				// We saw the tree in the middle of an update. The locked search below settles it.
+			}
+		}
+
+		stamp = lock.readLock();
+		try {
+			return tree.search(key);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Retrieves the maximum imbalance parameter.
+	 * @return The maximum imbalance parameter provided as a constructor parameter.
+	 */
+	public int getMaxImbalance() {
+		return tree.getMaxImbalance();
+	}
+
+	/**
+	 * Return the height of the tree, or -1 if the tree is empty.
+	 * @return The height of the tree.
+	 * @see AVLGTree#getHeight()
+	 */
+	public int getHeight() {
+		long stamp = lock.readLock();
+		try {
+			return tree.getHeight();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Query the tree for emptiness.
+	 * @return {@code true} if the tree is empty, {@code false} otherwise.
+	 */
+	public boolean isEmpty() {
+		long stamp = lock.readLock();
+		try {
+			return tree.isEmpty();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Return the key at the tree's root node.
+	 * @return The key at the tree's root node.
+	 * @throws EmptyTreeException if the tree is empty.
+	 */
+	public T getRoot() throws EmptyTreeException {
+		long stamp = lock.readLock();
+		try {
+			return tree.getRoot();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * <p>Return the number of elements in the tree.</p>
+	 * @return The number of elements in the tree.
+	 */
+	public int getCount() {
+		long stamp = lock.readLock();
+		try {
+			return tree.getCount();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * <p>Empties the tree of all its elements.</p>
+	 */
+	public void clear() {
+		long stamp = lock.writeLock();
+		try {
+			tree.clear();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+}
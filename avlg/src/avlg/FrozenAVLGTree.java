@@ -0,0 +1,259 @@
+package avlg;
+
+import avlg.exceptions.EmptyTreeException;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>{@link FrozenAVLGTree} is an immutable, read-only copy of an {@link AVLGTree}, produced by
+ * {@link AVLGTree#freeze()} and meant for trees that are queried far more often than they change. Instead of
+ * {@code Node} objects scattered over the heap, it stores a perfectly balanced tree in two flat arrays (keys, and
+ * child indices), with the nodes arranged in <a href="https://en.wikipedia.org/wiki/Van_Emde_Boas_tree">van Emde
+ * Boas</a> order.</p>
+ *
+ * <p>The van Emde Boas layout cuts the tree at half its height, stores the top half first, and then stores each
+ * of the bottom subtrees one after the other, laying out every piece recursively the same way. Any root-to-leaf
+ * path therefore crosses only O(log<sub>B</sub> n) blocks of memory, for <em>every</em> block size B at once: it
+ * makes good use of cache lines, of every cache level, and of pages, without being tuned for any of them. This is
+ * why the layout is called <em>cache-oblivious</em>. Note that the key objects themselves still live wherever
+ * they were allocated; only the tree structure and the key references are packed.</p>
+ *
+ * <p>Building a frozen tree out of n sorted keys takes O(n) time. Every key is placed once, and the only other
+ * work is walking down the top half of each piece of the recursion to find the bottom subtrees below it. A
+ * piece of 2<sup>h</sup> nodes has only 2<sup>h/2</sup> of them in its top half, so these walks add up to a
+ * constant number of steps per key; in practice, the layout makes about three calls per key.</p>
+ *
+ * @author Joe Barresi
+ *
+ * @see AVLGTree#freeze()
+ */
+public class FrozenAVLGTree<T extends Comparable<T>> implements Iterable<T> {
+
+	private static final int NIL = -1;
+
+	private final T[] keys;       // keys[slot] is the key of the node stored at that slot
+	private final int[] children; // children[2 * slot] and children[2 * slot + 1] are its left and right child
+	private final int levels;     // Number of levels of the tree, i.e. its height plus one
+
+	// Scratch state of the constructor, released once the arrays are built.
+	private T[] sorted;
+	private int[] slotOf;
+	private int next;
+
+	/**
+	 * Build a frozen tree out of keys in ascending order.
+	 * @param sorted The keys, sorted in ascending order.
+	 */
+	FrozenAVLGTree(T[] sorted) {
+		int n = sorted.length;
+		this.keys = AVLGTree.newArray(Comparable.class, n);
+		this.children = new int[2 * n];
+		this.levels = 32 - Integer.numberOfLeadingZeros(n);
+		this.sorted = sorted;
+		this.slotOf = new int[n];
+
+		// The shape is implicit: the subtree over the sorted keys [lo, hi] has the middle one as its root.
+		layout(0, n - 1, levels);
+		link(0, n - 1);
+		this.sorted = null;
+		this.slotOf = null;
+	}
+
+	// Lays out the top `levels` levels of the subtree over [lo, hi] in van Emde Boas order.
+	private void layout(int lo, int hi, int levels) {
+		if (lo > hi) {
+			return;
+		}
+		if (levels == 1) {
+			int mid = (lo + hi) >>> 1;
+			keys[next] = sorted[mid];
+			slotOf[mid] = next++;
+			return;
+		}
+
+		int top = levels / 2;
+		layout(lo, hi, top);
+		layoutBottom(lo, hi, top, levels - top);
+	}
+
+	// Lays out, from left to right, every subtree that hangs `depth` levels below the root of [lo, hi].
+	private void layoutBottom(int lo, int hi, int depth, int levels) {
+		if (lo > hi) {
+			return;
+		}
+		if (depth == 0) {
+			layout(lo, hi, levels);
+			return;
+		}
+
+		int mid = (lo + hi) >>> 1;
+		layoutBottom(lo, mid - 1, depth - 1, levels);
+		layoutBottom(mid + 1, hi, depth - 1, levels);
+	}
+
+	// Fills in the child indices of the subtree over [lo, hi], returning the slot of its root.
+	private int link(int lo, int hi) {
+		if (lo > hi) {
+			return NIL;
+		}
+		int mid = (lo + hi) >>> 1;
+		int slot = slotOf[mid];
+		children[2 * slot] = link(lo, mid - 1);
+		children[2 * slot + 1] = link(mid + 1, hi);
+		return slot;
+	}
+
+	private void checkNotEmpty() throws EmptyTreeException {
+		if (keys.length == 0) {
+			throw new EmptyTreeException("Tried to query an Empty Tree");
+		}
+	}
+
+	/**
+	 * <p>Search for key in the tree. Return a reference to it if it's in there, or {@code null} otherwise.</p>
+	 * @param key The key to search for.
+	 * @return key if key is in the tree, or {@code null} otherwise.
+	 * @throws EmptyTreeException if the tree is empty.
+	 */
+	public T search(T key) throws EmptyTreeException {
+		checkNotEmpty();
+		int slot = 0;
+		while (slot != NIL) {
+			int cmp = key.compareTo(keys[slot]);
+			if (cmp == 0) {
+				return key;
+			}
+			slot = children[2 * slot + ((cmp < 0) ? 0 : 1)];
+		}
+		return null;
+	}
+
+	/**
+	 * Return the largest key in the tree that is smaller than or equal to key.
+	 * @param key The key to look up.
+	 * @return The greatest stored key &lt;= key, or {@code null} if there is none.
+	 * @throws EmptyTreeException if the tree is empty.
+	 */
+	public T floor(T key) throws EmptyTreeException {
+		checkNotEmpty();
+		int slot = 0, best = NIL;
+		while (slot != NIL) {
+			int cmp = key.compareTo(keys[slot]);
+			if (cmp == 0) {
+				return keys[slot];
+			} else if (cmp < 0) {
+				slot = children[2 * slot];
+			} else {
+				best = slot;
+				slot = children[2 * slot + 1];
+			}
+		}
+		return (best == NIL) ? null : keys[best];
+	}
+
+	/**
+	 * Return the smallest key in the tree that is larger than or equal to key.
+	 * @param key The key to look up.
+	 * @return The least stored key &gt;= key, or {@code null} if there is none.
+	 * @throws EmptyTreeException if the tree is empty.
+	 */
+	public T ceiling(T key) throws EmptyTreeException {
+		checkNotEmpty();
+		int slot = 0, best = NIL;
+		while (slot != NIL) {
+			int cmp = key.compareTo(keys[slot]);
+			if (cmp == 0) {
+				return keys[slot];
+			} else if (cmp > 0) {
+				slot = children[2 * slot + 1];
+			} else {
+				best = slot;
+				slot = children[2 * slot];
+			}
+		}
+		return (best == NIL) ? null : keys[best];
+	}
+
+	/**
+	 * <p>Return the height of the tree. Frozen trees are perfectly balanced, so this is
+	 * &lfloor;log<sub>2</sub>n&rfloor;, or -1 for an empty tree.</p>
+	 * @return The height of the tree.
+	 */
+	public int getHeight() {
+		return levels - 1;
+	}
+
+	/**
+	 * Query the tree for emptiness.
+	 * @return {@code true} if the tree is empty, {@code false} otherwise.
+	 */
+	public boolean isEmpty() {
+		return keys.length == 0;
+	}
+
+	/**
+	 * <p>Return the number of elements in the tree.</p>
+	 * @return The number of elements in the tree.
+	 */
+	public int getCount() {
+		return keys.length;
+	}
+
+	/**
+	 * Return an {@link Iterator} over all the keys of the tree, in ascending order.
+	 * @return An ascending {@link Iterator} over the keys of the tree.
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		return new RangeIterator(null, null);
+	}
+
+	/**
+	 * <p>Return an {@link Iterator} over the keys in the closed range [lo, hi], in ascending order. Producing m
+	 * keys takes O(log n + m) time.</p>
+	 * @param lo The lower end of the range, inclusive.
+	 * @param hi The upper end of the range, inclusive.
+	 * @return An ascending {@link Iterator} over the keys k with lo &lt;= k &lt;= hi.
+	 */
+	public Iterator<T> range(T lo, T hi) {
+		return new RangeIterator(lo, hi);
+	}
+
+	// Inorder walk over [lo, hi] (null meaning unbounded), with the pending ancestors on an int stack.
+	private class RangeIterator implements Iterator<T> {
+		private final int[] stack = new int[Math.max(levels, 1)];
+		private int top = 0;
+		private final T hi;
+
+		RangeIterator(T lo, T hi) {
+			this.hi = hi;
+			int slot = keys.length == 0 ? NIL : 0;
+			while (slot != NIL) {
+				if (lo == null || keys[slot].compareTo(lo) >= 0) {
+					stack[top++] = slot;
+					slot = children[2 * slot];
+				} else {
+					slot = children[2 * slot + 1];
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return top > 0 && (hi == null || keys[stack[top - 1]].compareTo(hi) <= 0);
+		}
+
+		@Override
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			int slot = stack[--top];
+			for (int child = children[2 * slot + 1]; child != NIL; child = children[2 * child]) {
+				stack[top++] = child;
+			}
+			return keys[slot];
+		}
+	}
+}
@@ -0,0 +1,346 @@
+package avlg;
+
+import avlg.exceptions.EmptyTreeException;
+import avlg.exceptions.InvalidBalanceException;
+
+import java.util.Arrays;
+
+/**
+ * <p>{@link IntAVLGTree} is an {@link AVLGTree} specialized for primitive {@code int} keys. Instead of one
+ * {@code Node} object per key, it stores its nodes in four parallel {@code int} arrays (key, left child,
+ * right child and height), and refers to nodes by their index into these arrays. This means that:</p>
+ *  <ul>
+ *      <li>keys are never boxed into {@link Integer}s, and are compared with plain integer comparisons,</li>
+ *      <li>every key costs 16 bytes, instead of the object header, three references, a boxed key and a
+ *      height that {@link AVLGTree} pays for,</li>
+ *      <li>nodes sit next to each other in memory, which makes descents much friendlier to the cache.</li>
+ *  </ul>
+ *
+ * <p>Slots of deleted nodes are chained into a free list through the left-child array and reused by later
+ * insertions. The arrays double in size when they run out of room.</p>
+ *
+ * @author Joe Barresi
+ *
+ * @see AVLGTree
+ * @see EmptyTreeException
+ * @see InvalidBalanceException
+ */
+public class IntAVLGTree {
+
+	private static final int NIL = -1;
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final int g;
+	private int size;
+	private int root;
+
+	private int[] keys;
+	private int[] lefts;
+	private int[] rights;
+	private int[] heights;
+	private int used; // Slots [0, used) have been handed out at least once
+	private int free; // Head of the free list, threaded through lefts
+
+	// Reusable root-to-leaf path for insert and delete, as in AVLGTree.
+	private int[] path = new int[16];
+
+	private int height(int n) {
+		return (n == NIL) ? -1 : heights[n];
+	}
+
+	private void update(int n) {
+		heights[n] = Math.max(height(lefts[n]), height(rights[n])) + 1;
+	}
+
+	private int imbal(int n) {
+		return height(lefts[n]) - height(rights[n]);
+	}
+
+	private int rotateRight(int tgt) {
+		int temp = lefts[tgt];
+		lefts[tgt] = rights[temp];
+		rights[temp] = tgt;
+		update(tgt);
+		update(temp);
+		return temp;
+	}
+
+	private int rotateLeft(int tgt) {
+		int temp = rights[tgt];
+		rights[tgt] = lefts[temp];
+		lefts[temp] = tgt;
+		update(tgt);
+		update(temp);
+		return temp;
+	}
+
+	private int rebalance(int cur) {
+		int bal = imbal(cur);
+		if (bal > g) {
+			if (imbal(lefts[cur]) < 0) {
+				lefts[cur] = rotateLeft(lefts[cur]);
+			}
+			return rotateRight(cur);
+		} else if (bal < -g) {
+			if (imbal(rights[cur]) > 0) {
+				rights[cur] = rotateRight(rights[cur]);
+			}
+			return rotateLeft(cur);
+		}
+		return cur;
+	}
+
+	private int allocate(int key) {
+		int n;
+		if (free != NIL) {
+			n = free;
+			free = lefts[n];
+		} else {
+			if (used == keys.length) {
+				int capacity = 2 * keys.length;
+				keys = Arrays.copyOf(keys, capacity);
+				lefts = Arrays.copyOf(lefts, capacity);
+				rights = Arrays.copyOf(rights, capacity);
+				heights = Arrays.copyOf(heights, capacity);
+			}
+			n = used++;
+		}
+
+		keys[n] = key;
+		lefts[n] = rights[n] = NIL;
+		heights[n] = 0;
+		return n;
+	}
+
+	private void release(int n) {
+		lefts[n] = free;
+		free = n;
+	}
+
+	private void ensurePath() {
+		int need = height(root) + 2;
+		if (path.length < need) {
+			path = new int[Math.max(need, 2 * path.length)];
+		}
+	}
+
+	private void replace(int depth, int old, int repl) {
+		if (depth == 0) {
+			root = repl;
+		} else if (lefts[path[depth - 1]] == old) {
+			lefts[path[depth - 1]] = repl;
+		} else {
+			rights[path[depth - 1]] = repl;
+		}
+	}
+
+	private void rebalancePath(int depth) {
+		for (int i = depth - 1; i >= 0; i--) {
+			int cur = path[i];
+			int old = heights[cur];
+			update(cur);
+			int fixed = rebalance(cur);
+			if (fixed != cur) {
+				replace(i, cur, fixed);
+			}
+			if (heights[fixed] == old) {
+				break;
+			}
+		}
+	}
+
+	private int maxImbalAux(int cur) {
+		if (cur == NIL) {
+			return 0;
+		}
+		return Math.max(Math.max(maxImbalAux(lefts[cur]), maxImbalAux(rights[cur])), Math.abs(imbal(cur)));
+	}
+
+	// Checks that every key in the subtree of cur lies in [lo, hi].
+	private boolean isBSTAux(int cur, long lo, long hi) {
+		if (cur == NIL) {
+			return true;
+		}
+		return lo <= keys[cur] && keys[cur] <= hi
+				&& isBSTAux(lefts[cur], lo, keys[cur]) && isBSTAux(rights[cur], keys[cur], hi);
+	}
+
+	/**
+	 * The class constructor provides the tree with the maximum imbalance allowed.
+	 * @param maxImbalance The maximum imbalance allowed by the AVL-G Tree.
+	 * @throws InvalidBalanceException if maxImbalance is a value smaller than 1.
+	 */
+	public IntAVLGTree(int maxImbalance) throws InvalidBalanceException {
+		if (maxImbalance < 1) {
+			throw new InvalidBalanceException("Error creating a new int AVL-G Tree");
+		}
+		g = maxImbalance;
+		keys = new int[INITIAL_CAPACITY];
+		lefts = new int[INITIAL_CAPACITY];
+		rights = new int[INITIAL_CAPACITY];
+		heights = new int[INITIAL_CAPACITY];
+		clear();
+	}
+
+	/**
+	 * Insert key in the tree. As with {@link AVLGTree#insert(Comparable)}, duplicates are not filtered out.
+	 * @param key The key to insert in the tree.
+	 */
+	public void insert(int key) {
+		ensurePath();
+		int depth = 0;
+		boolean left = false;
+		int cur = root;
+		while (cur != NIL) {
+			path[depth++] = cur;
+			left = key < keys[cur];
+			cur = left ? lefts[cur] : rights[cur];
+		}
+
+		int leaf = allocate(key);
+		if (depth == 0) {
+			root = leaf;
+		} else if (left) {
+			lefts[path[depth - 1]] = leaf;
+		} else {
+			rights[path[depth - 1]] = leaf;
+		}
+		rebalancePath(depth);
+		size++;
+	}
+
+	/**
+	 * Delete the key from the tree.
+	 * @param key The key to delete from the structure.
+	 * @return {@code true} if the key was found and removed, {@code false} otherwise.
+	 * @throws EmptyTreeException if the tree is empty.
+	 */
+	public boolean delete(int key) throws EmptyTreeException {
+		if (size == 0) {
+			throw new EmptyTreeException("Tried to delete on Empty Tree");
+		}
+
+		ensurePath();
+		int depth = 0;
+		int cur = root;
+		while (cur != NIL && keys[cur] != key) {
+			path[depth++] = cur;
+			cur = (key < keys[cur]) ? lefts[cur] : rights[cur];
+		}
+		if (cur == NIL) {
+			return false;
+		}
+
+		if (lefts[cur] != NIL && rights[cur] != NIL) {
+			// Two children: pull up the inorder successor and unlink its slot instead.
+			path[depth++] = cur;
+			int swap = rights[cur];
+			while (lefts[swap] != NIL) {
+				path[depth++] = swap;
+				swap = lefts[swap];
+			}
+			keys[cur] = keys[swap];
+			cur = swap;
+		}
+
+		replace(depth, cur, (lefts[cur] != NIL) ? lefts[cur] : rights[cur]);
+		release(cur);
+		rebalancePath(depth);
+		size--;
+		return true;
+	}
+
+	/**
+	 * Search for key in the tree.
+	 * @param key The key to search for.
+	 * @return {@code true} if key is in the tree, {@code false} otherwise.
+	 * @throws EmptyTreeException if the tree is empty.
+	 */
+	public boolean search(int key) throws EmptyTreeException {
+		if (size == 0) {
+			throw new EmptyTreeException("Tried to search on Empty Tree");
+		}
+
+		int cur = root;
+		while (cur != NIL) {
+			int k = keys[cur];
+			if (key == k) {
+				return true;
+			}
+			cur = (key < k) ? lefts[cur] : rights[cur];
+		}
+		return false;
+	}
+
+	/**
+	 * Retrieves the maximum imbalance parameter.
+	 * @return The maximum imbalance parameter provided as a constructor parameter.
+	 */
+	public int getMaxImbalance() {
+		return g;
+	}
+
+	/**
+	 * Return the height of the tree. A stub tree has a height of 0, and an empty tree has a height of -1.
+	 * @return The height of the tree. If the tree is empty, returns -1.
+	 */
+	public int getHeight() {
+		return height(root);
+	}
+
+	/**
+	 * Query the tree for emptiness. A tree is empty iff it has zero keys stored.
+	 * @return {@code true} if the tree is empty, {@code false} otherwise.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Return the key at the tree's root node.
+	 * @return The key at the tree's root node.
+	 * @throws EmptyTreeException if the tree is empty.
+	 */
+	public int getRoot() throws EmptyTreeException {
+		if (size == 0) {
+			throw new EmptyTreeException("Can't get Root of Empty Tree");
+		}
+		return keys[root];
+	}
+
+	/**
+	 * <p>Establishes whether the tree <em>globally</em> satisfies the BST condition.</p>
+	 * @return {@code true} if the tree satisfies the Binary Search Tree property, {@code false} otherwise.
+	 */
+	public boolean isBST() {
+		return isBSTAux(root, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * <p>Establishes whether the tree <em>globally</em> satisfies the AVL-G condition.</p>
+	 * @return {@code true} if the tree satisfies the balance requirements of an AVLG tree, {@code false}
+	 * otherwise.
+	 */
+	public boolean isAVLGBalanced() {
+		return maxImbalAux(root) <= g;
+	}
+
+	/**
+	 * <p>Empties the tree of all its elements. The arrays keep their current capacity, so refilling the tree
+	 * up to its previous size allocates nothing.</p>
+	 */
+	public void clear() {
+		root = NIL;
+		free = NIL;
+		used = 0;
+		size = 0;
+	}
+
+	/**
+	 * <p>Return the number of elements in the tree.</p>
+	 * @return The number of elements in the tree.
+	 */
+	public int getCount() {
+		return size;
+	}
+}
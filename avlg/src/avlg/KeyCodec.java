@@ -0,0 +1,203 @@
+package avlg;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>{@link KeyCodec} tells the on-disk format of {@link MappedAVLGTree} how to lay out keys of type {@code T} as
+ * bytes. Keys may be fixed-width (like {@link #INTEGER} and {@link #LONG}) or carry their own length prefix
+ * (like {@link #STRING}); all the format needs to know is how many bytes a stored key takes up.</p>
+ *
+ * <p>Reading methods use <em>absolute</em> positions and must not change the position or limit of the buffer
+ * they are given, so that a single mapped buffer can be shared by concurrent readers.</p>
+ *
+ * @author Joe Barresi
+ *
+ * @see MappedAVLGTree
+ * @see AVLGTree#writeTo(java.nio.file.Path, KeyCodec)
+ */
+public interface KeyCodec<T extends Comparable<T>> {
+
+	/**
+	 * Return the number of bytes that {@link #encode(Comparable, ByteBuffer)} will write for key.
+	 * @param key The key to measure.
+	 * @return The encoded length of key, in bytes.
+	 */
+	int encodedLength(T key);
+
+	/**
+	 * Write key at the current position of out, advancing the position by {@link #encodedLength(Comparable)}.
+	 * @param key The key to write.
+	 * @param out The buffer to write to.
+	 */
+	void encode(T key, ByteBuffer out);
+
+	/**
+	 * Return the number of bytes taken up by the key stored at position.
+	 * @param in The buffer to read from.
+	 * @param position The absolute position of the stored key.
+	 * @return The encoded length of the stored key, in bytes.
+	 */
+	int length(ByteBuffer in, int position);
+
+	/**
+	 * Read back the key stored at position.
+	 * @param in The buffer to read from.
+	 * @param position The absolute position of the stored key.
+	 * @return The stored key.
+	 */
+	T decode(ByteBuffer in, int position);
+
+	/**
+	 * Compare key with the key stored at position, like {@code key.compareTo(decode(in, position))}. The default
+	 * does exactly that; codecs should override it if they can compare without building the stored key.
+	 * @param key The key to compare.
+	 * @param in The buffer to read from.
+	 * @param position The absolute position of the stored key.
+	 * @return A negative number, zero or a positive number if key is smaller than, equal to or larger than the
+	 * stored key.
+	 */
+	default int compare(T key, ByteBuffer in, int position) {
+		return key.compareTo(decode(in, position));
+	}
+
+	/**
+	 * {@link Integer} keys, stored as 4 big-endian bytes.
+	 */
+	KeyCodec<Integer> INTEGER = new KeyCodec<Integer>() {
+		@Override
+		public int encodedLength(Integer key) {
+			return Integer.BYTES;
+		}
+
+		@Override
+		public void encode(Integer key, ByteBuffer out) {
+			out.putInt(key);
+		}
+
+		@Override
+		public int length(ByteBuffer in, int position) {
+			return Integer.BYTES;
+		}
+
+		@Override
+		public Integer decode(ByteBuffer in, int position) {
+			return in.getInt(position);
+		}
+
+		@Override
+		public int compare(Integer key, ByteBuffer in, int position) {
+			return Integer.compare(key, in.getInt(position));
+		}
+	};
+
+	/**
+	 * {@link Long} keys, stored as 8 big-endian bytes.
+	 */
+	KeyCodec<Long> LONG = new KeyCodec<Long>() {
+		@Override
+		public int encodedLength(Long key) {
+			return Long.BYTES;
+		}
+
+		@Override
+		public void encode(Long key, ByteBuffer out) {
+			out.putLong(key);
+		}
+
+		@Override
+		public int length(ByteBuffer in, int position) {
+			return Long.BYTES;
+		}
+
+		@Override
+		public Long decode(ByteBuffer in, int position) {
+			return in.getLong(position);
+		}
+
+		@Override
+		public int compare(Long key, ByteBuffer in, int position) {
+			return Long.compare(key, in.getLong(position));
+		}
+	};
+
+	/**
+	 * {@link String} keys, stored as a 4-byte length followed by that many bytes of UTF-8. Comparisons decode the
+	 * stored bytes one character at a time as they go, so searches build no {@link String}s.
+	 */
+	KeyCodec<String> STRING = new KeyCodec<String>() {
+		@Override
+		public int encodedLength(String key) {
+			return Integer.BYTES + key.getBytes(StandardCharsets.UTF_8).length;
+		}
+
+		@Override
+		public void encode(String key, ByteBuffer out) {
+			byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+			out.putInt(bytes.length);
+			out.put(bytes);
+		}
+
+		@Override
+		public int length(ByteBuffer in, int position) {
+			return Integer.BYTES + in.getInt(position);
+		}
+
+		@Override
+		public String decode(ByteBuffer in, int position) {
+			byte[] bytes = new byte[in.getInt(position)];
+			ByteBuffer view = in.duplicate();
+			view.position(position + Integer.BYTES);
+			view.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		// Walks the UTF-8 bytes alongside the chars of key. Strings compare by UTF-16 code units, which for
+		// characters beyond U+FFFF is not the order of their UTF-8 bytes, so those are split into their two
+		// surrogates before comparing.
+		@Override
+		public int compare(String key, ByteBuffer in, int position) {
+			int pos = position + Integer.BYTES;
+			int end = pos + in.getInt(position);
+			char low = 0; // Second surrogate of the last stored character, if it still has to be compared
+			for (int i = 0; i < key.length(); i++) {
+				char stored;
+				if (low != 0) {
+					stored = low;
+					low = 0;
+				} else if (pos == end) {
+					return 1;
+				} else {
+					int b = in.get(pos) & 0xFF;
+					int cp;
+					if (b < 0x80) {
+						cp = b;
+						pos += 1;
+					} else if (b < 0xE0) {
+						cp = ((b & 0x1F) << 6) | (in.get(pos + 1) & 0x3F);
+						pos += 2;
+					} else if (b < 0xF0) {
+						cp = ((b & 0x0F) << 12) | ((in.get(pos + 1) & 0x3F) << 6) | (in.get(pos + 2) & 0x3F);
+						pos += 3;
+					} else {
+						cp = ((b & 0x07) << 18) | ((in.get(pos + 1) & 0x3F) << 12) | ((in.get(pos + 2) & 0x3F) << 6)
+								| (in.get(pos + 3) & 0x3F);
+						pos += 4;
+					}
+					if (Character.isSupplementaryCodePoint(cp)) {
+						stored = Character.highSurrogate(cp);
+						low = Character.lowSurrogate(cp);
+					} else {
+						stored = (char) cp;
+					}
+				}
+
+				char c = key.charAt(i);
+				if (c != stored) {
+					return c - stored;
+				}
+			}
+			return (low != 0 || pos < end) ? -1 : 0;
+		}
+	};
+}
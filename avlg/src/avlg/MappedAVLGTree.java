@@ -0,0 +1,210 @@
+package avlg;
+
+import avlg.exceptions.EmptyTreeException;
+import avlg.exceptions.InvalidBalanceException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>{@link MappedAVLGTree} is a read-only view of an {@link AVLGTree} that was saved with
+ * {@link AVLGTree#writeTo(Path, KeyCodec)}. The file is mapped into memory with {@link FileChannel#map}, and
+ * searches run directly against the mapped bytes, so opening even a huge tree costs no deserialization at all:
+ * the operating system pages in the parts of the file that searches actually touch.</p>
+ *
+ * <p>The file starts with a header of five big-endian {@code int}s: a magic number, the format version, the
+ * maximum imbalance G, the number of keys and the height of the tree. The nodes follow in <em>pre-order</em>.
+ * Each node is stored as one flag byte (whether it has a left and a right child), the absolute file offset of its
+ * right child as an {@code int} (0 if there is none), and its key as written by the {@link KeyCodec}. The left
+ * child of a node, if any, starts right after the node's key. The file must be smaller than 2GB.</p>
+ *
+ * @author Joe Barresi
+ *
+ * @see AVLGTree#writeTo(Path, KeyCodec)
+ * @see KeyCodec
+ */
+public class MappedAVLGTree<T extends Comparable<T>> implements Iterable<T> {
+
+	static final int MAGIC = 0x41564C47; // "AVLG"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 5 * Integer.BYTES;
+	static final int NODE_HEADER_SIZE = 1 + Integer.BYTES;
+	static final byte HAS_LEFT = 1, HAS_RIGHT = 2;
+
+	private final ByteBuffer buffer;
+	private final KeyCodec<T> codec;
+	private final int g;
+	private final int count;
+	private final int height;
+
+	private MappedAVLGTree(ByteBuffer buffer, KeyCodec<T> codec) throws IOException {
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not an AVL-G tree file");
+		} else if (buffer.getInt(Integer.BYTES) != VERSION) {
+			throw new IOException("Unsupported AVL-G tree file version " + buffer.getInt(Integer.BYTES));
+		}
+
+		this.buffer = buffer;
+		this.codec = codec;
+		this.g = buffer.getInt(2 * Integer.BYTES);
+		this.count = buffer.getInt(3 * Integer.BYTES);
+		this.height = buffer.getInt(4 * Integer.BYTES);
+	}
+
+	/**
+	 * Map a file written by {@link AVLGTree#writeTo(Path, KeyCodec)} into memory. Only the header is read; nodes
+	 * are read on demand by the queries.
+	 * @param file The file to open.
+	 * @param codec The {@link KeyCodec} that the file was written with.
+	 * @param <T> The type of the keys.
+	 * @return A read-only tree backed by the mapped file.
+	 * @throws IOException if the file cannot be read, is too large to map, or is not an AVL-G tree file.
+	 */
+	public static <T extends Comparable<T>> MappedAVLGTree<T> open(Path file, KeyCodec<T> codec) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("AVL-G tree file too large to map: " + channel.size() + " bytes");
+			}
+			// The mapping stays valid after the channel is closed.
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new MappedAVLGTree<>(mapped, codec);
+		}
+	}
+
+	// Offset of the left child of the node at pos, which comes right after the node's key.
+	private int leftOf(int pos) {
+		int keyPos = pos + NODE_HEADER_SIZE;
+		return keyPos + codec.length(buffer, keyPos);
+	}
+
+	private int rightOf(int pos) {
+		return buffer.getInt(pos + 1);
+	}
+
+	/**
+	 * <p>Search for key in the mapped tree. Return a reference to it if it's in there, or {@code null} otherwise.
+	 * Stored keys are compared in place through {@link KeyCodec#compare(Comparable, ByteBuffer, int)}.</p>
+	 * @param key The key to search for.
+	 * @return key if key is in the tree, or {@code null} otherwise.
+	 * @throws EmptyTreeException if the tree is empty.
+	 */
+	public T search(T key) throws EmptyTreeException {
+		if (count == 0) {
+			throw new EmptyTreeException("Tried to search on Empty Tree");
+		}
+
+		int pos = HEADER_SIZE;
+		while (true) {
+			byte flags = buffer.get(pos);
+			int cmp = codec.compare(key, buffer, pos + NODE_HEADER_SIZE);
+			if (cmp == 0) {
+				return key;
+			} else if (cmp < 0) {
+				if ((flags & HAS_LEFT) == 0) {
+					return null;
+				}
+				pos = leftOf(pos);
+			} else {
+				if ((flags & HAS_RIGHT) == 0) {
+					return null;
+				}
+				pos = rightOf(pos);
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the maximum imbalance parameter of the tree that was saved.
+	 * @return The maximum imbalance parameter.
+	 */
+	public int getMaxImbalance() {
+		return g;
+	}
+
+	/**
+	 * Return the height of the tree that was saved, or -1 if it was empty.
+	 * @return The height of the tree.
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Query the tree for emptiness.
+	 * @return {@code true} if the tree is empty, {@code false} otherwise.
+	 */
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	/**
+	 * <p>Return the number of elements in the tree.</p>
+	 * @return The number of elements in the tree.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * <p>Return an {@link Iterator} over the keys in ascending order. Keys are decoded one at a time as the
+	 * iteration reaches them.</p>
+	 * @return An ascending {@link Iterator} over the keys of the tree.
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		return new Iterator<T>() {
+			private final int[] stack = new int[height + 1];
+			private int top = 0;
+
+			{
+				if (count > 0) {
+					pushSpine(HEADER_SIZE);
+				}
+			}
+
+			private void pushSpine(int pos) {
+				while (true) {
+					stack[top++] = pos;
+					if ((buffer.get(pos) & HAS_LEFT) == 0) {
+						return;
+					}
+					pos = leftOf(pos);
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				return top > 0;
+			}
+
+			@Override
+			public T next() {
+				if (top == 0) {
+					throw new NoSuchElementException();
+				}
+				int pos = stack[--top];
+				if ((buffer.get(pos) & HAS_RIGHT) != 0) {
+					pushSpine(rightOf(pos));
+				}
+				return codec.decode(buffer, pos + NODE_HEADER_SIZE);
+			}
+		};
+	}
+
+	/**
+	 * <p>Load the mapped tree into a regular, modifiable {@link AVLGTree} with the same keys and maximum imbalance.
+	 * The keys are read in order and bulk-loaded in O(n), so the result is perfectly balanced.</p>
+	 * @return A new in-memory {@link AVLGTree} with the keys of this tree.
+	 * @throws InvalidBalanceException if the file holds an invalid maximum imbalance.
+	 * @see AVLGTree#fromSorted(int, Iterator, int)
+	 */
+	public AVLGTree<T> toTree() throws InvalidBalanceException {
+		return AVLGTree.fromSorted(g, iterator(), count);
+	}
+}
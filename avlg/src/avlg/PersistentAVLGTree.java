@@ -0,0 +1,301 @@
+package avlg;
+
+import avlg.exceptions.EmptyTreeException;
+import avlg.exceptions.InvalidBalanceException;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>{@link PersistentAVLGTree} is a <a href="https://en.wikipedia.org/wiki/Persistent_data_structure">persistent</a>
+ * version of {@link AVLGTree}. Its nodes are never modified after they are created. An insertion or a deletion instead
+ * copies the O(log n) nodes on the path from the root to the affected node (and the few nodes that take part in
+ * rotations), and links the copies to the untouched subtrees of the old version.</p>
+ *
+ * <p>Because old versions are never modified, {@link #snapshot()} is O(1): it simply hands out another tree that
+ * points at the current root. The snapshot and the tree it was taken from share all their nodes, and later
+ * updates to either one are invisible to the other. Iterating over a snapshot therefore gives a consistent
+ * point-in-time view, even while the original keeps changing.</p>
+ *
+ * @author Joe Barresi
+ *
+ * @see AVLGTree
+ * @see EmptyTreeException
+ * @see InvalidBalanceException
+ */
+public class PersistentAVLGTree<T extends Comparable<T>> implements Iterable<T> {
+
+	private final int g;
+	private Node<T> root;
+
+	private static final class Node<T> {
+		final Node<T> left;
+		final Node<T> right;
+		final T key;
+		final int height;
+		final int size;
+
+		Node(Node<T> left, T key, Node<T> right) {
+			this.left = left;
+			this.right = right;
+			this.key = key;
+			this.height = Math.max(height(left), height(right)) + 1;
+			this.size = size(left) + size(right) + 1;
+		}
+	}
+
+	private static int height(Node<?> obj) {
+		return (obj == null) ? -1 : obj.height;
+	}
+
+	private static int size(Node<?> obj) {
+		return (obj == null) ? 0 : obj.size;
+	}
+
+	private static int imbal(Node<?> cur) {
+		return height(cur.left) - height(cur.right);
+	}
+
+	// Builds the node (left, key, right), rotating if the two subtrees are too far apart. Rotations only
+	// create new nodes: the children of left and right are reused as they are.
+	private Node<T> balance(Node<T> left, T key, Node<T> right) {
+		int bal = height(left) - height(right);
+		if (bal > g) {
+			if (imbal(left) >= 0) {
+				return new Node<>(left.left, left.key, new Node<>(left.right, key, right));
+			}
+			Node<T> mid = left.right;
+			return new Node<>(new Node<>(left.left, left.key, mid.left), mid.key, new Node<>(mid.right, key, right));
+		} else if (bal < -g) {
+			if (imbal(right) <= 0) {
+				return new Node<>(new Node<>(left, key, right.left), right.key, right.right);
+			}
+			Node<T> mid = right.left;
+			return new Node<>(new Node<>(left, key, mid.left), mid.key, new Node<>(mid.right, right.key, right.right));
+		}
+		return new Node<>(left, key, right);
+	}
+
+	private Node<T> insertAux(Node<T> cur, T key) {
+		if (cur == null) {
+			return new Node<>(null, key, null);
+		} else if (key.compareTo(cur.key) < 0) {
+			return balance(insertAux(cur.left, key), cur.key, cur.right);
+		} else {
+			return balance(cur.left, cur.key, insertAux(cur.right, key));
+		}
+	}
+
+	// Returns cur itself, not a copy, if key is not in its subtree, so failed deletions copy nothing.
+	private Node<T> deleteAux(Node<T> cur, T key) {
+		if (cur == null) {
+			return null;
+		}
+
+		int cmp = key.compareTo(cur.key);
+		if (cmp < 0) {
+			Node<T> left = deleteAux(cur.left, key);
+			return (left == cur.left) ? cur : balance(left, cur.key, cur.right);
+		} else if (cmp > 0) {
+			Node<T> right = deleteAux(cur.right, key);
+			return (right == cur.right) ? cur : balance(cur.left, cur.key, right);
+		} else if (cur.left == null) {
+			return cur.right;
+		} else if (cur.right == null) {
+			return cur.left;
+		} else {
+			Node<T> min = cur.right;
+			while (min.left != null) {
+				min = min.left;
+			}
+			return balance(cur.left, min.key, deleteMin(cur.right));
+		}
+	}
+
+	private Node<T> deleteMin(Node<T> cur) {
+		if (cur.left == null) {
+			return cur.right;
+		}
+		return balance(deleteMin(cur.left), cur.key, cur.right);
+	}
+
+	private int maxImbalAux(Node<T> cur) {
+		if (cur == null) {
+			return 0;
+		}
+		return Math.max(Math.max(maxImbalAux(cur.left), maxImbalAux(cur.right)), Math.abs(imbal(cur)));
+	}
+
+	private PersistentAVLGTree(int maxImbalance, Node<T> root) {
+		this.g = maxImbalance;
+		this.root = root;
+	}
+
+	/**
+	 * The class constructor provides the tree with the maximum imbalance allowed.
+	 * @param maxImbalance The maximum imbalance allowed by the AVL-G Tree.
+	 * @throws InvalidBalanceException if maxImbalance is a value smaller than 1.
+	 */
+	public PersistentAVLGTree(int maxImbalance) throws InvalidBalanceException {
+		if (maxImbalance < 1) {
+			throw new InvalidBalanceException("Error creating a new persistent AVL-G Tree");
+		}
+		this.g = maxImbalance;
+		this.root = null;
+	}
+
+	/**
+	 * Insert key in the tree. Only the path from the root to the new key is copied; any snapshot taken
+	 * before this call does not see the new key.
+	 * @param key The key to insert in the tree.
+	 */
+	public void insert(T key) {
+		root = insertAux(root, key);
+	}
+
+	/**
+	 * Delete the key from the tree and return it to the caller. Only the path from the root to the deleted
+	 * key is copied; any snapshot taken before this call still contains the key.
+	 * @param key The key to delete from the structure.
+	 * @return The key that was removed, or {@code null} if the key was not found.
+	 * @throws EmptyTreeException if the tree is empty.
+	 */
+	public T delete(T key) throws EmptyTreeException {
+		if (root == null) {
+			throw new EmptyTreeException("Tried to delete on Empty Tree");
+		}
+
+		Node<T> updated = deleteAux(root, key);
+		if (updated == root) {
+			return null;
+		}
+		root = updated;
+		return key;
+	}
+
+	/**
+	 * <p>Search for key in the tree. Return a reference to it if it's in there, or {@code null} otherwise.</p>
+	 * @param key The key to search for.
+	 * @return key if key is in the tree, or {@code null} otherwise.
+	 * @throws EmptyTreeException if the tree is empty.
+	 */
+	public T search(T key) throws EmptyTreeException {
+		if (root == null) {
+			throw new EmptyTreeException("Tried to search on Empty Tree");
+		}
+
+		Node<T> cur = root;
+		while (cur != null) {
+			int cmp = key.compareTo(cur.key);
+			if (cmp == 0) {
+				return key;
+			}
+			cur = (cmp < 0) ? cur.left : cur.right;
+		}
+		return null;
+	}
+
+	/**
+	 * <p>Take a snapshot of the tree in O(1) time. The snapshot is an independent {@link PersistentAVLGTree}
+	 * that shares every node with this one. Updates to this tree are not visible in the snapshot, and updates
+	 * to the snapshot are not visible in this tree.</p>
+	 * @return A snapshot of the tree as it is right now.
+	 */
+	public PersistentAVLGTree<T> snapshot() {
+		return new PersistentAVLGTree<>(g, root);
+	}
+
+	/**
+	 * Retrieves the maximum imbalance parameter.
+	 * @return The maximum imbalance parameter provided as a constructor parameter.
+	 */
+	public int getMaxImbalance() {
+		return g;
+	}
+
+	/**
+	 * Return the height of the tree. A stub tree has a height of 0, and an empty tree has a height of -1.
+	 * @return The height of the tree. If the tree is empty, returns -1.
+	 */
+	public int getHeight() {
+		return height(root);
+	}
+
+	/**
+	 * Query the tree for emptiness. A tree is empty iff it has zero keys stored.
+	 * @return {@code true} if the tree is empty, {@code false} otherwise.
+	 */
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+	/**
+	 * Return the key at the tree's root node.
+	 * @return The key at the tree's root node.
+	 * @throws EmptyTreeException if the tree is empty.
+	 */
+	public T getRoot() throws EmptyTreeException {
+		if (root == null) {
+			throw new EmptyTreeException("Can't get Root of Empty Tree");
+		}
+		return root.key;
+	}
+
+	/**
+	 * <p>Establishes whether the tree <em>globally</em> satisfies the AVL-G condition.</p>
+	 * @return {@code true} if the tree satisfies the balance requirements of an AVLG tree, {@code false}
+	 * otherwise.
+	 */
+	public boolean isAVLGBalanced() {
+		return maxImbalAux(root) <= g;
+	}
+
+	/**
+	 * <p>Empties the tree of all its elements. Snapshots taken before this call keep their keys.</p>
+	 */
+	public void clear() {
+		root = null;
+	}
+
+	/**
+	 * <p>Return the number of elements in the tree.</p>
+	 * @return The number of elements in the tree.
+	 */
+	public int getCount() {
+		return size(root);
+	}
+
+	/**
+	 * <p>Return an {@link Iterator} over the keys of the tree in ascending order. Since nodes are immutable,
+	 * the iterator keeps walking the version of the tree that existed when it was created, and is not affected
+	 * by later updates.</p>
+	 * @return An ascending {@link Iterator} over the keys of the tree.
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		ArrayDeque<Node<T>> stack = new ArrayDeque<>();
+		for (Node<T> cur = root; cur != null; cur = cur.left) {
+			stack.push(cur);
+		}
+
+		return new Iterator<T>() {
+			@Override
+			public boolean hasNext() {
+				return !stack.isEmpty();
+			}
+
+			@Override
+			public T next() {
+				if (stack.isEmpty()) {
+					throw new NoSuchElementException();
+				}
+				Node<T> cur = stack.pop();
+				for (Node<T> n = cur.right; n != null; n = n.left) {
+					stack.push(n);
+				}
+				return cur.key;
+			}
+		};
+	}
+}
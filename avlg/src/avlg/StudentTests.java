@@ -4,7 +4,20 @@ import org.junit.Test;
 import avlg.exceptions.EmptyTreeException;
 import avlg.exceptions.InvalidBalanceException;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.*;
 
@@ -169,4 +182,689 @@ public class StudentTests {
 //        assertTrue("After inserting " + NUMS + " - many random elements, it was determined that our AVL-3 tree" +
 //                " did not satisfy the AVL-3 property!", tree.isAVLGBalanced());
 //    }
+
+    /* Heights are cached in the nodes, so they must survive every rotation. Sequential insertions are the worst
+     * case for an unbalanced BST, and an AVL-1 tree of 2^k - 1 sequential keys is expected to be perfect. Deleting
+     * half of the keys afterwards exercises the deletion rotations as well.
+     */
+    @Test
+    public void testCachedHeightsAfterSequentialInsertsAndDeletes() throws InvalidBalanceException, EmptyTreeException {
+        tree = new AVLGTree<>(1);
+        for (int i = 0; i < 1023; i++) {
+            tree.insert(i);
+        }
+        assertEquals("After inserting 1023 sequential keys into an AVL-1 tree, its height should be 9.", 9, tree.getHeight());
+        assertTrue("After inserting 1023 sequential keys into an AVL-1 tree, it was not AVL-1 balanced.", tree.isAVLGBalanced());
+
+        for (int i = 0; i < 1023; i += 2) {
+            assertEquals("Deleting a key that was inserted should return it.", Integer.valueOf(i), tree.delete(i));
+        }
+        assertEquals("After deleting the even keys, 511 keys should remain.", 511, tree.getCount());
+        assertTrue("After deleting the even keys from an AVL-1 tree, it was not AVL-1 balanced.", tree.isAVLGBalanced());
+        assertTrue("After deleting the even keys from an AVL-1 tree, it was not a BST.", tree.isBST());
+    }
+
+    /* Deletion now finds its key in the same descent that removes it, so a failed deletion must leave the tree
+     * untouched, while a successful one must leave every other key reachable by search.
+     */
+    @Test
+    public void testDeleteAndSearchInSingleDescent() throws InvalidBalanceException, EmptyTreeException {
+        tree = new AVLGTree<>(2);
+        for (int i = 0; i < NUMS; i++) {
+            tree.insert(2 * i);
+        }
+        assertNull("Deleting an odd key from a tree of even keys should return null.", tree.delete(7));
+        assertEquals("A failed deletion should not change the number of keys.", NUMS, tree.getCount());
+
+        for (int i = 0; i < NUMS; i += 3) {
+            tree.delete(2 * i);
+        }
+        for (int i = 0; i < NUMS; i++) {
+            Integer expected = (i % 3 == 0) ? null : Integer.valueOf(2 * i);
+            assertEquals("Search returned an unexpected result after a sequence of deletions.", expected, tree.search(2 * i));
+        }
+        assertTrue("After a sequence of deletions, the AVL-2 tree was not AVL-2 balanced.", tree.isAVLGBalanced());
+    }
+
+    /* Subtree sizes have to stay correct through all four kinds of rotations and through deletions, so we
+     * build an AVL-1 tree in random order, delete some keys, and then check select, rank and countInRange
+     * against the keys we know to be there.
+     */
+    @Test
+    public void testOrderStatistics() throws InvalidBalanceException, EmptyTreeException {
+        tree = new AVLGTree<>(1);
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < NUMS; i++) {
+            keys.add(10 * i);
+        }
+        Collections.shuffle(keys, r);
+        for (Integer k : keys) {
+            tree.insert(k);
+        }
+        for (int i = 0; i < NUMS; i += 4) {
+            tree.delete(10 * i);
+        }
+
+        int rank = 0;
+        for (int i = 0; i < NUMS; i++) {
+            if (i % 4 == 0) {
+                continue;
+            }
+            assertEquals("select() returned an unexpected key.", Integer.valueOf(10 * i), tree.select(rank));
+            assertEquals("rank() of a stored key was not the expected one.", rank, tree.rank(10 * i));
+            assertEquals("rank() of a key that is not stored was not the expected one.", rank + 1, tree.rank(10 * i + 5));
+            rank++;
+        }
+        assertEquals("countInRange() over the whole key space should count every key.", tree.getCount(),
+                tree.countInRange(Integer.MIN_VALUE, Integer.MAX_VALUE));
+        assertEquals("countInRange() returned an unexpected count.", 6, tree.countInRange(15, 95)); // 20, 30, 50, 60, 70, 90
+        assertEquals("countInRange() with an inverted range should be 0.", 0, tree.countInRange(95, 15));
+
+        try {
+            tree.select(tree.getCount());
+            fail("select() with a rank equal to the number of keys should have thrown.");
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+    }
+
+    /* The iterators are lazy, so they have to discover the boundaries of the range by themselves. We check
+     * ascending, descending and ranged iteration against the keys we inserted, including ranges whose
+     * ends are not stored in the tree.
+     */
+    @Test
+    public void testIterators() throws InvalidBalanceException {
+        tree = new AVLGTree<>(3);
+        for (int i = NUMS - 1; i >= 0; i--) {
+            tree.insert(2 * i);
+        }
+
+        int expected = 0;
+        for (Integer k : tree) {
+            assertEquals("Ascending iteration produced an unexpected key.", Integer.valueOf(expected), k);
+            expected += 2;
+        }
+        assertEquals("Ascending iteration did not produce every key.", 2 * NUMS, expected);
+
+        Iterator<Integer> it = tree.descendingIterator();
+        for (int i = NUMS - 1; i >= 0; i--) {
+            assertEquals("Descending iteration produced an unexpected key.", Integer.valueOf(2 * i), it.next());
+        }
+        assertFalse("Descending iteration should have been exhausted.", it.hasNext());
+
+        it = tree.range(11, 20);
+        for (int k = 12; k <= 20; k += 2) {
+            assertEquals("Range iteration produced an unexpected key.", Integer.valueOf(k), it.next());
+        }
+        assertFalse("Range iteration went past the upper end of the range.", it.hasNext());
+        try {
+            it.next();
+            fail("Calling next() on an exhausted iterator should throw a NoSuchElementException.");
+        } catch (NoSuchElementException ignored) {
+        }
+        assertFalse("A range with no stored keys should produce nothing.", tree.range(3, 3).hasNext());
+        assertFalse("An inverted range should produce nothing.", tree.range(20, 10).hasNext());
+    }
+
+    /* A bulk-loaded tree is perfectly balanced, so even an AVL-1 tree built from 2^k - 1 keys must be perfect,
+     * and it has to behave like any other tree once it is built. Unsorted input to fromSorted() is an error.
+     */
+    @Test
+    public void testBulkLoad() throws InvalidBalanceException, EmptyTreeException {
+        Integer[] keys = new Integer[1023];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = 3 * i;
+        }
+        tree = AVLGTree.fromSorted(1, keys);
+        assertEquals("A bulk-loaded tree of 1023 keys should report 1023 keys.", 1023, tree.getCount());
+        assertEquals("A bulk-loaded tree of 1023 keys should be perfect, with a height of 9.", 9, tree.getHeight());
+        assertTrue("A bulk-loaded tree was not AVL-1 balanced.", tree.isAVLGBalanced());
+        assertEquals("select() on a bulk-loaded tree returned an unexpected key.", Integer.valueOf(30), tree.select(10));
+        tree.insert(1);
+        tree.delete(0);
+        assertTrue("A bulk-loaded tree was not AVL-1 balanced after an insertion and a deletion.", tree.isAVLGBalanced());
+
+        Integer[] shuffled = new Integer[NUMS];
+        for (int i = 0; i < NUMS; i++) {
+            shuffled[i] = r.nextInt();
+        }
+        tree = AVLGTree.fromUnsorted(2, shuffled);
+        assertEquals("A tree built from unsorted keys should hold all of them.", NUMS, tree.getCount());
+        assertTrue("A tree built from unsorted keys was not a BST.", tree.isBST());
+        for (Integer k : shuffled) {
+            assertEquals("A tree built from unsorted keys could not find one of them.", k, tree.search(k));
+        }
+
+        try {
+            AVLGTree.fromSorted(1, new Integer[] {1, 3, 2});
+            fail("fromSorted() should reject keys that are not sorted.");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    /* Readers of a ConcurrentAVLGTree run without locks while a writer keeps rotating the tree underneath them.
+     * Keys that are never touched by the writer must be found by every search, no matter what the writer does.
+     */
+    @Test
+    public void testConcurrentSearchesDuringWrites() throws Exception {
+        ConcurrentAVLGTree<Integer> shared = new ConcurrentAVLGTree<>(1);
+        for (int i = 0; i < NUMS; i++) {
+            shared.insert(2 * i); // Even keys are stable
+        }
+
+        AtomicBoolean failed = new AtomicBoolean(false);
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread(() -> {
+                try {
+                    for (int round = 0; round < 20; round++) {
+                        for (int i = 0; i < NUMS; i++) {
+                            if (shared.search(2 * i) == null) {
+                                failed.set(true);
+                            }
+                        }
+                    }
+                } catch (EmptyTreeException e) {
+                    failed.set(true);
+                }
+            });
+            readers[t].start();
+        }
+        for (int round = 0; round < 20; round++) { // Odd keys come and go
+            for (int i = 0; i < NUMS; i++) {
+                shared.insert(2 * i + 1);
+            }
+            for (int i = 0; i < NUMS; i++) {
+                shared.delete(2 * i + 1);
+            }
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertFalse("A concurrent search missed a key that was in the tree the whole time.", failed.get());
+        assertEquals("After inserting and deleting the odd keys, only the even keys should remain.", NUMS, shared.getCount());
+    }
+
+    /* Snapshots of a PersistentAVLGTree share their nodes with the tree they were taken from, so the test makes
+     * sure that updates on either side never leak into the other, and that both sides stay balanced.
+     */
+    @Test
+    public void testPersistentSnapshots() throws InvalidBalanceException, EmptyTreeException {
+        PersistentAVLGTree<Integer> live = new PersistentAVLGTree<>(1);
+        for (int i = 0; i < NUMS; i++) {
+            live.insert(i);
+        }
+        PersistentAVLGTree<Integer> snapshot = live.snapshot();
+
+        for (int i = 0; i < NUMS; i += 2) {
+            live.delete(i);
+        }
+        live.insert(-1);
+        snapshot.insert(NUMS);
+
+        assertEquals("The live tree should have lost half of its keys and gained one.", NUMS / 2 + 1, live.getCount());
+        assertEquals("The snapshot should have kept every key and gained one.", NUMS + 1, snapshot.getCount());
+        assertNull("A key deleted from the live tree was found in it.", live.search(0));
+        assertEquals("A key deleted from the live tree after the snapshot was missing from the snapshot.",
+                Integer.valueOf(0), snapshot.search(0));
+        assertNull("A key inserted into the snapshot leaked into the live tree.", live.search(NUMS));
+        assertNull("A key inserted into the live tree leaked into the snapshot.", snapshot.search(-1));
+        assertNull("Deleting a key that is not stored should return null.", live.delete(0));
+        assertTrue("The live tree was not AVL-1 balanced.", live.isAVLGBalanced());
+        assertTrue("The snapshot was not AVL-1 balanced.", snapshot.isAVLGBalanced());
+
+        int expected = 0;
+        for (Integer k : snapshot) {
+            assertEquals("Iterating over the snapshot produced an unexpected key.", Integer.valueOf(expected++), k);
+        }
+    }
+
+    /* IntAVLGTree recycles the slots of deleted nodes, so we interleave insertions and deletions of random keys
+     * and compare every answer with an AVLGTree that is fed the same operations.
+     */
+    @Test
+    public void testIntTreeMatchesGenericTree() throws InvalidBalanceException, EmptyTreeException {
+        IntAVLGTree ints = new IntAVLGTree(2);
+        tree = new AVLGTree<>(2);
+        Set<Integer> stored = new HashSet<>();
+        for (int i = 0; i < 10 * NUMS; i++) {
+            int k = r.nextInt(NUMS);
+            if (stored.contains(k)) {
+                assertTrue("IntAVLGTree failed to delete a stored key.", ints.delete(k));
+                tree.delete(k);
+                stored.remove(k);
+            } else {
+                ints.insert(k);
+                tree.insert(k);
+                stored.add(k);
+            }
+        }
+
+        assertEquals("IntAVLGTree and AVLGTree disagree on the number of keys.", tree.getCount(), ints.getCount());
+        assertEquals("IntAVLGTree and AVLGTree disagree on the root.", tree.getRoot(), Integer.valueOf(ints.getRoot()));
+        assertEquals("IntAVLGTree and AVLGTree disagree on the height.", tree.getHeight(), ints.getHeight());
+        for (int k = 0; k < NUMS; k++) {
+            assertEquals("IntAVLGTree gave the wrong answer when searching for " + k + ".", stored.contains(k), ints.search(k));
+        }
+        assertTrue("IntAVLGTree was not a BST.", ints.isBST());
+        assertTrue("IntAVLGTree was not AVL-2 balanced.", ints.isAVLGBalanced());
+        assertFalse("Deleting a key that is not stored should return false.", ints.delete(-1));
+    }
+
+    /* Split and join move whole subtrees around and rebalance only along one spine, so we check both the keys and
+     * the balance of their results, and then do the same for the set operations that are built on top of them.
+     */
+    @Test
+    public void testSplitJoinAndSetOperations() throws InvalidBalanceException {
+        tree = new AVLGTree<>(2);
+        for (int i = 0; i < NUMS; i++) {
+            tree.insert(i);
+        }
+        AVLGTree<Integer> upper = tree.split(NUMS / 3);
+        assertEquals("After a split, the lower tree should hold the keys below the split key.", NUMS / 3, tree.getCount());
+        assertEquals("After a split, the upper tree should hold the split key and the keys above it.",
+                NUMS - NUMS / 3, upper.getCount());
+        assertEquals("The upper tree of a split should start at the split key.", NUMS / 3, upper.rank(NUMS / 3) + NUMS / 3);
+        assertTrue("The lower tree of a split was not AVL-2 balanced.", tree.isAVLGBalanced());
+        assertTrue("The upper tree of a split was not AVL-2 balanced.", upper.isAVLGBalanced());
+
+        upper.split(NUMS / 3 + 1).clear(); // Leaves exactly the split key in upper
+        AVLGTree<Integer> tall = new AVLGTree<>(2);
+        for (int i = NUMS; i < 2 * NUMS; i++) {
+            tall.insert(i);
+        }
+        AVLGTree<Integer> joined = AVLGTree.join(tree, NUMS - 1, tall);
+        assertEquals("A join should hold the keys of both trees and the pivot.", NUMS / 3 + 1 + NUMS, joined.getCount());
+        assertTrue("Joining a short tree with a tall one broke the AVL-2 condition.", joined.isAVLGBalanced());
+        assertTrue("Joining two trees should leave the arguments empty.", tree.isEmpty() && tall.isEmpty());
+
+        AVLGTree<Integer> evens = new AVLGTree<>(2), triples = new AVLGTree<>(2);
+        for (int i = 0; i < NUMS; i++) {
+            evens.insert(2 * i);
+            triples.insert(3 * i);
+        }
+        AVLGTree<Integer> sixes = AVLGTree.intersection(evens, triples);
+        assertEquals("The intersection of the multiples of 2 and 3 should hold the multiples of 6.",
+                (2 * NUMS - 1) / 6 + 1, sixes.getCount());
+        for (Integer k : sixes) {
+            assertEquals("The intersection held a key that is not a multiple of 6.", 0, k % 6);
+        }
+
+        AVLGTree<Integer> all = new AVLGTree<>(2), odds = new AVLGTree<>(2);
+        for (int i = 0; i < NUMS; i++) {
+            all.insert(i);
+            if (i % 2 == 1) {
+                odds.insert(i);
+            }
+        }
+        AVLGTree<Integer> rest = AVLGTree.difference(all, odds);
+        assertEquals("Removing the odd keys should leave the even ones.", NUMS / 2, rest.getCount());
+        AVLGTree<Integer> union = AVLGTree.parallelUnion(rest, sixes);
+        assertEquals("The union of the evens below NUMS and the multiples of 6 was not the expected size.",
+                NUMS / 2 + (2 * NUMS - 1) / 6 - (NUMS - 1) / 6, union.getCount());
+        assertTrue("The union was not AVL-2 balanced.", union.isAVLGBalanced());
+    }
+
+    /* The listener should see exactly the rotations from the first in-class example, and an AVL-2 tree fed the
+     * same keys should not rotate at all. It should also be told how deep each operation went.
+     */
+    @Test
+    public void testListenerReportsRotationsAndDepths() throws InvalidBalanceException, EmptyTreeException {
+        List<String> events = new ArrayList<>();
+        AVLGTreeListener<Integer> recorder = new AVLGTreeListener<Integer>() {
+            @Override
+            public void rotated(Rotation rotation, Integer key, int imbalance) {
+                events.add(rotation + " " + key + " " + imbalance);
+            }
+
+            @Override
+            public void depthReached(Operation operation, int depth) {
+                events.add(operation + " " + depth);
+            }
+        };
+
+        tree = new AVLGTree<>(1);
+        tree.setListener(recorder);
+        tree.insert(20);
+        tree.insert(10);
+        tree.insert(5);
+        tree.search(5);
+        assertEquals("The listener did not see the expected events.",
+                Arrays.asList("INSERT 0", "INSERT 1", "RIGHT 20 2", "INSERT 2", "SEARCH 1"), events);
+
+        events.clear();
+        tree = new AVLGTree<>(2);
+        tree.setListener(recorder);
+        tree.insert(20);
+        tree.insert(10);
+        tree.insert(5);
+        tree.setListener(null);
+        tree.insert(1); // Would rotate, but nobody is listening anymore
+        assertEquals("An AVL-2 tree should not rotate after three descending insertions.",
+                Arrays.asList("INSERT 0", "INSERT 1", "INSERT 2"), events);
+    }
+
+    /* An adaptive tree that sees nothing but sequential insertions keeps rotating, so it should loosen its
+     * balance parameter. Once the workload turns into searches, it should tighten it again, even if no update
+     * ever comes, but only after a rebuild that leaves it balanced under the tighter parameter.
+     */
+    @Test
+    public void testAdaptiveBalance() throws InvalidBalanceException, EmptyTreeException {
+        tree = new AVLGTree<>(1);
+        tree.enableAdaptiveBalance(1, 4);
+        for (int i = 0; i < 20 * NUMS; i++) {
+            tree.insert(i);
+        }
+        int loosened = tree.getMaxImbalance();
+        assertTrue("A write-heavy, rotation-heavy workload should have raised G, but it stayed at 1.", loosened > 1);
+        assertTrue("An adaptive tree should never raise G above its upper limit.", loosened <= 4);
+        assertTrue("An adaptive tree should satisfy the G it reports.", tree.isAVLGBalanced());
+
+        for (int i = 0; i < 60 * NUMS; i++) {
+            tree.search(i % (20 * NUMS));
+        }
+        assertEquals("A read-only workload should lower G without waiting for an update.", 1, tree.getMaxImbalance());
+        assertTrue("After lowering G on a search, the tree should satisfy it.", tree.isAVLGBalanced());
+
+        for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < 20 * NUMS; i += 97) {
+                tree.search(i);
+            }
+            tree.delete(round);
+        }
+        assertEquals("A read-heavy workload should have lowered G all the way back down.", 1, tree.getMaxImbalance());
+        assertTrue("After lowering G, the tree should satisfy it.", tree.isAVLGBalanced());
+        assertEquals("Adapting G should not lose any keys.", 20 * NUMS - 200, tree.getCount());
+    }
+
+    /* Narrowing the adaptive range below the current G must not lower G until the tree is rebuilt for it, even when
+     * a write-heavy window asks for G to go up.
+     */
+    @Test
+    public void testAdaptiveRangeBelowCurrentG() throws InvalidBalanceException {
+        tree = new AVLGTree<>(5);
+        for (int i = 0; i < 100 * NUMS; i++) {
+            tree.insert(i);
+        }
+        assertTrue("An AVL-5 tree should satisfy the AVL-5 condition.", tree.isAVLGBalanced());
+
+        tree.enableAdaptiveBalance(1, 2);
+        for (int i = 100 * NUMS; i < 105 * NUMS; i++) {
+            tree.insert(i);
+            if (i % 100 == 0) {
+                assertTrue("After " + (i - 100 * NUMS + 1) + " inserts, the tree does not satisfy the G it reports ("
+                        + tree.getMaxImbalance() + ").", tree.isAVLGBalanced());
+            }
+        }
+        assertTrue("After narrowing the range, the tree should satisfy the G it reports.", tree.isAVLGBalanced());
+        assertTrue("An adaptive tree should not report a G below its lower limit.", tree.getMaxImbalance() >= 1);
+    }
+
+    /* Batches are merged into the tree as a whole, so we check that overlapping batches add and remove exactly
+     * the keys they should, that the tree is still balanced afterwards, and that a listener hears about them.
+     */
+    @Test
+    public void testBatchInsertAndDelete() throws InvalidBalanceException, EmptyTreeException {
+        tree = new AVLGTree<>(1);
+        for (int i = 0; i < NUMS; i += 2) {
+            tree.insert(i);
+        }
+
+        List<Integer> batch = new ArrayList<>();
+        for (int i = 0; i < 2 * NUMS; i++) {
+            batch.add(r.nextInt(2 * NUMS));
+        }
+        Set<Integer> expected = new TreeSet<>(batch);
+        for (int i = 0; i < NUMS; i += 2) {
+            expected.add(i);
+        }
+        List<String> events = new ArrayList<>();
+        tree.setListener(new AVLGTreeListener<Integer>() {
+            @Override
+            public void batchApplied(Operation operation, int batchSize, int changed) {
+                events.add(operation + " " + batchSize + " " + changed);
+            }
+        });
+        assertEquals("insertAll() should report how many new keys it added.", expected.size() - NUMS / 2, tree.insertAll(batch));
+        assertEquals("insertAll() should tell the listener about the whole batch.",
+                Arrays.asList("INSERT " + batch.size() + " " + (expected.size() - NUMS / 2)), events);
+        assertEquals("insertAll() did not leave the expected number of keys.", expected.size(), tree.getCount());
+        assertTrue("insertAll() broke the AVL-1 condition.", tree.isAVLGBalanced());
+        for (Integer k : expected) {
+            assertEquals("A key inserted by insertAll() could not be found.", k, tree.search(k));
+        }
+
+        List<Integer> evens = new ArrayList<>();
+        for (int i = 0; i < 4 * NUMS; i += 2) {
+            evens.add(i);
+        }
+        int removed = 0;
+        for (Integer k : expected) {
+            removed += (k % 2 == 0) ? 1 : 0;
+        }
+        assertEquals("deleteAll() should report how many keys it removed.", removed, tree.deleteAll(evens));
+        assertEquals("deleteAll() should tell the listener about the whole batch.", "DELETE " + evens.size() + " " + removed,
+                events.get(1));
+        assertTrue("deleteAll() broke the AVL-1 condition.", tree.isAVLGBalanced());
+        for (Integer k : tree) {
+            assertEquals("deleteAll() left a key behind.", 1, k % 2);
+        }
+    }
+
+    /* A tree written to disk and mapped back in should answer searches exactly like the original, for both
+     * fixed-width and length-prefixed keys, and should load back into an equivalent in-memory tree.
+     */
+    @Test
+    public void testMappedRoundTrip() throws Exception {
+        tree = new AVLGTree<>(2);
+        for (int i = 0; i < NUMS; i++) {
+            tree.insert(r.nextInt(10 * NUMS));
+        }
+        Path file = Files.createTempFile("avlg", ".bin");
+        try {
+            tree.writeTo(file, KeyCodec.INTEGER);
+            MappedAVLGTree<Integer> mapped = MappedAVLGTree.open(file, KeyCodec.INTEGER);
+            assertEquals("The mapped tree should report as many keys as the original.", tree.getCount(), mapped.getCount());
+            assertEquals("The mapped tree should report the height of the original.", tree.getHeight(), mapped.getHeight());
+            for (int k = 0; k < 10 * NUMS; k++) {
+                assertEquals("The mapped tree and the original disagree on key " + k + ".", tree.search(k), mapped.search(k));
+            }
+
+            AVLGTree<Integer> loaded = mapped.toTree();
+            Iterator<Integer> expected = tree.iterator();
+            for (Integer k : loaded) {
+                assertEquals("Loading the mapped tree produced an unexpected key.", expected.next(), k);
+            }
+            assertFalse("Loading the mapped tree lost some keys.", expected.hasNext());
+
+            AVLGTree<String> words = new AVLGTree<>(1);
+            // U+FF21 sorts after the surrogates of U+1F600 as a String, but before it in UTF-8.
+            String[] stored = {"delta", "alpha", "\u00e9cho", "", "charlie", "bravo", "\uff21", "\ud83d\ude00", "alph"};
+            for (String w : stored) {
+                words.insert(w);
+            }
+            words.writeTo(file, KeyCodec.STRING);
+            MappedAVLGTree<String> mappedWords = MappedAVLGTree.open(file, KeyCodec.STRING);
+            for (String w : stored) {
+                assertEquals("The mapped tree could not find a stored string.", w, mappedWords.search(w));
+            }
+            for (String w : new String[] {"echo", "alpha!", "al", "\ud83d", "\uff21\uff21", "\ud83d\ude01"}) {
+                assertNull("The mapped tree found a string that was never stored.", mappedWords.search(w));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /* A frozen tree is laid out in a completely different order in memory, but it should answer every query
+     * exactly like the tree it was frozen from, and it should not see later changes to that tree.
+     */
+    @Test
+    public void testFrozenTreeQueries() throws InvalidBalanceException, EmptyTreeException {
+        tree = new AVLGTree<>(3);
+        for (int i = 0; i < NUMS; i++) {
+            tree.insert(5 * i);
+        }
+        FrozenAVLGTree<Integer> frozen = tree.freeze();
+        tree.insert(1);
+
+        assertEquals("A frozen tree should hold as many keys as its source.", NUMS, frozen.getCount());
+        assertEquals("A frozen tree of 1000 keys should be perfectly balanced.", 9, frozen.getHeight());
+        assertNull("A frozen tree should not see keys inserted after it was frozen.", frozen.search(1));
+        for (int k = -2; k < 5 * NUMS + 2; k++) {
+            Integer floor = (k < 0) ? null : Integer.valueOf(Math.min(k - Math.floorMod(k, 5), 5 * (NUMS - 1)));
+            Integer ceiling = (k > 5 * (NUMS - 1)) ? null : Integer.valueOf(Math.max(k + Math.floorMod(-k, 5), 0));
+            assertEquals("A frozen tree gave the wrong answer when searching for " + k + ".",
+                    (k >= 0 && k % 5 == 0 && k < 5 * NUMS) ? Integer.valueOf(k) : null, frozen.search(k));
+            assertEquals("A frozen tree returned the wrong floor of " + k + ".", floor, frozen.floor(k));
+            assertEquals("A frozen tree returned the wrong ceiling of " + k + ".", ceiling, frozen.ceiling(k));
+        }
+
+        Iterator<Integer> it = frozen.range(12, 31);
+        for (int k = 15; k <= 30; k += 5) {
+            assertEquals("A range scan over a frozen tree produced an unexpected key.", Integer.valueOf(k), it.next());
+        }
+        assertFalse("A range scan over a frozen tree went past the end of the range.", it.hasNext());
+        int expected = 0;
+        for (Integer k : frozen) {
+            assertEquals("Iterating over a frozen tree produced an unexpected key.", Integer.valueOf(expected), k);
+            expected += 5;
+        }
+    }
+
+    /* Nearest-key queries on a tree of multiples of 10, probing both stored keys and the gaps between them, and
+     * then draining the tree from both ends with pollMin and pollMax.
+     */
+    @Test
+    public void testNearestKeyQueries() throws InvalidBalanceException, EmptyTreeException {
+        tree = new AVLGTree<>(2);
+        TreeSet<Integer> ref = new TreeSet<>();
+        for (int i = 0; i < NUMS; i++) {
+            int k = 10 * (r.nextInt(NUMS) + 1);
+            if (ref.add(k)) {
+                tree.insert(k);
+            }
+        }
+
+        for (int k = 0; k <= 10 * NUMS + 10; k += 5) {
+            assertEquals("floor(" + k + ") was not the expected key.", ref.floor(k), tree.floor(k));
+            assertEquals("ceiling(" + k + ") was not the expected key.", ref.ceiling(k), tree.ceiling(k));
+            assertEquals("lower(" + k + ") was not the expected key.", ref.lower(k), tree.lower(k));
+            assertEquals("higher(" + k + ") was not the expected key.", ref.higher(k), tree.higher(k));
+        }
+        assertEquals("min() was not the smallest key.", ref.first(), tree.min());
+        assertEquals("max() was not the largest key.", ref.last(), tree.max());
+
+        while (!ref.isEmpty()) {
+            assertEquals("pollMin() did not remove the smallest key.", ref.pollFirst(), tree.pollMin());
+            if (!ref.isEmpty()) {
+                assertEquals("pollMax() did not remove the largest key.", ref.pollLast(), tree.pollMax());
+            }
+            assertEquals("Polling did not keep the count up to date.", ref.size(), tree.getCount());
+            assertTrue("Polling broke the AVL-2 condition.", tree.isAVLGBalanced());
+        }
+        assertTrue("Polling every key should leave the tree empty.", tree.isEmpty());
+    }
+
+    /* A word-count style workload on an AVLGMap, checked against a TreeMap: merge, compute and put on
+     * keys that are mostly already present, which must update values in place without restructuring the tree.
+     */
+    @Test
+    public void testMapInPlaceUpdates() throws InvalidBalanceException {
+        AVLGMap<Integer, Integer> map = new AVLGMap<>(2);
+        TreeMap<Integer, Integer> ref = new TreeMap<>();
+        for (int i = 0; i < 10 * NUMS; i++) {
+            int k = r.nextInt(NUMS);
+            assertEquals("merge() returned the wrong count for key " + k + ".",
+                    ref.merge(k, 1, Integer::sum), map.merge(k, 1, Integer::sum));
+        }
+        assertEquals("The map should hold as many keys as the reference map.", ref.size(), map.getCount());
+
+        int height = map.getHeight();
+        for (int k : ref.keySet()) {
+            assertEquals("put() did not return the previous value.", ref.put(k, -k), map.put(k, -k));
+            assertEquals("compute() did not remap an existing value.",
+                    ref.compute(k, (key, v) -> v - 1), map.compute(k, (key, v) -> v - 1));
+        }
+        assertEquals("Updating existing keys should not change the shape of the tree.", height, map.getHeight());
+
+        for (int k = -5; k < NUMS + 5; k++) {
+            assertEquals("get(" + k + ") returned the wrong value.", ref.get(k), map.get(k));
+            if (k % 3 == 0) {
+                assertEquals("compute() returning null should remove the key.",
+                        ref.compute(k, (key, v) -> null), map.compute(k, (key, v) -> null));
+            } else if (k % 3 == 1) {
+                assertEquals("remove() did not return the removed value.", ref.remove(k), map.remove(k));
+            }
+            assertEquals("The map lost track of its count.", ref.size(), map.getCount());
+        }
+        assertTrue("Removing keys broke the AVL-2 condition.", map.isAVLGBalanced());
+        for (int k = 0; k < NUMS; k++) {
+            assertEquals("containsKey(" + k + ") disagreed with the reference map.",
+                    ref.containsKey(k), map.containsKey(k));
+        }
+
+        // A remapping function that throws must leave the map as it was, and ready for the next update.
+        for (int k = -1; k <= NUMS; k++) {
+            try {
+                map.compute(k, (key, v) -> {
+                    throw new IllegalStateException();
+                });
+                fail("compute() should pass on the exception of its remapping function.");
+            } catch (IllegalStateException ignored) {
+            }
+            try {
+                map.merge(k, 1, (v, w) -> {
+                    throw new IllegalStateException();
+                });
+                if (ref.containsKey(k)) {
+                    fail("merge() should pass on the exception of its remapping function.");
+                }
+                ref.put(k, 1);
+            } catch (IllegalStateException ignored) {
+            }
+            assertEquals("A failed remapping changed the value of " + k + ".", ref.get(k), map.get(k));
+            assertEquals("A failed remapping changed the count.", ref.size(), map.getCount());
+        }
+        for (int k = -1; k <= NUMS; k++) {
+            assertEquals("remove() did not return the removed value.", ref.remove(k), map.remove(k));
+        }
+        assertTrue("The map should be empty after removing every key.", map.isEmpty());
+    }
+
+    /* Finger searches checked against plain searches: a sequential sweep, a random walk with small steps, and
+     * random probes interleaved with insertions and deletions, which must invalidate the finger.
+     */
+    @Test
+    public void testFingerSearch() throws InvalidBalanceException, EmptyTreeException {
+        tree = new AVLGTree<>(3);
+        for (int i = 0; i < NUMS; i++) {
+            tree.insert(2 * i);
+        }
+
+        for (int k = -1; k <= 2 * NUMS; k++) {
+            assertEquals("A sequential finger search for " + k + " gave the wrong answer.",
+                    tree.search(k), tree.fingerSearch(k));
+        }
+        int k = NUMS;
+        for (int i = 0; i < NUMS; i++) {
+            k = Math.max(-1, Math.min(2 * NUMS, k + r.nextInt(9) - 4));
+            assertEquals("A local finger search for " + k + " gave the wrong answer.",
+                    tree.search(k), tree.fingerSearch(k));
+        }
+        for (int i = 0; i < 5 * NUMS; i++) {
+            k = r.nextInt(4 * NUMS) - NUMS;
+            if (i % 3 == 0) {
+                tree.insert(2 * NUMS + i);
+            } else if (i % 3 == 1) {
+                tree.delete(r.nextInt(2 * NUMS));
+            }
+            assertEquals("A finger search for " + k + " after an update gave the wrong answer.",
+                    tree.search(k), tree.fingerSearch(k));
+        }
+        tree.clear();
+        tree.insert(7);
+        assertEquals("A finger search right after clear() gave the wrong answer.", Integer.valueOf(7),
+                tree.fingerSearch(7));
+    }
 }
@@ -0,0 +1,966 @@
+package avlg.bench;
+
+import avlg.AVLGTree;
+import avlg.ConcurrentAVLGTree;
+import avlg.FrozenAVLGTree;
+import avlg.exceptions.EmptyTreeException;
+import avlg.exceptions.InvalidBalanceException;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>{@link AVLGBenchmark} is a self-contained performance harness for {@link AVLGTree} and its variants. It is
+ * made of several suites, each of which prints its own table.</p>
+ *
+ * <p>The <b>structures</b> suite measures, for every tree size and every key stream, for AVL-1 through AVL-5
+ * trees and for a {@link TreeMap} baseline:</p>
+ *  <ul>
+ *      <li><b>insert</b>: building the tree from empty, one key at a time,</li>
+ *      <li><b>search</b>: lookups drawn from the key stream,</li>
+ *      <li><b>finger</b>: the same lookups through {@link AVLGTree#fingerSearch(Comparable)} (AVL-G trees only),</li>
+ *      <li><b>mixed</b>: 80% lookups, 10% deletions and 10% re-insertions of the deleted keys,</li>
+ *      <li><b>delete</b>: emptying the tree, one key at a time.</li>
+ *  </ul>
+ *
+ * <p>There are three key streams. <b>uniform</b> inserts the keys in random order and looks them up uniformly at
+ * random. <b>sequential</b> inserts and looks them up in ascending order. <b>zipfian</b> inserts them in random order
+ * and looks them up following a Zipf distribution of exponent {@value #ZIPF_EXPONENT}, whose hottest keys are
+ * scattered over the key space.</p>
+ *
+ * <p>Every configuration runs {@value #WARMUP_ROUNDS} warm-up rounds, to let the JIT compiler settle, and then
+ * {@value #MEASURED_ROUNDS} measured rounds, of which the median is reported. The report gives, for each phase,
+ * the time and the number of bytes allocated per operation. Allocation is read from the per-thread counters of
+ * {@code com.sun.management.ThreadMXBean}, and shows as n/a on JVMs that do not have them. Keys are boxed before
+ * the clock starts, so the allocation figures only count what the data structures themselves allocate.</p>
+ *
+ * <p>The <b>concurrent</b> suite measures the throughput of a {@link ConcurrentAVLGTree} shared by 1, 4, 16 and
+ * 64 threads, against an {@link AVLGTree} behind a {@link ReentrantReadWriteLock}. Each trial loads the tree
+ * with n keys, and then lets every thread run lookups for {@value #TRIAL_MILLIS} ms, with no updates, with one
+ * update every {@value #RARE_WRITES} operations, or with one every {@value #FREQUENT_WRITES}. A thread's updates
+ * alternately insert a key of its own and delete it again, so the size stays put. The report gives the total
+ * operations per microsecond over all threads, for 0%, 1% and 10% of updates, as the median of
+ * {@value #MEASURED_ROUNDS} trials run after {@value #WARMUP_ROUNDS} warm-up ones. Thread counts above the number
+ * of available processors mostly measure the scheduler.</p>
+ *
+ * <p>The <b>adaptive</b> suite sweeps G over three traces of {@value #TRACE_OPS} operations, each run on a tree
+ * loaded with n keys in random order: <b>read-heavy</b> (5% updates), <b>mixed</b> (50%) and <b>write-heavy</b>
+ * (90%). An update deletes a stored key or puts the last deleted one back, and the other operations are uniform
+ * lookups. Next to AVL-1 through AVL-5 and {@link TreeMap}, it runs an AVL-{@value #ADAPTIVE_START_G} tree that
+ * adapts G within [{@value #MIN_G}, {@value #MAX_G}] (see {@link AVLGTree#enableAdaptiveBalance(int, int)}). The
+ * report gives the median time per operation of each trace, and the G in force at its end.</p>
+ *
+ * <p>The <b>frozen</b> suite compares an {@link AVLGTree} with the {@link FrozenAVLGTree} that
+ * {@link AVLGTree#freeze()} makes of it. The pointer tree is built with
+ * {@link AVLGTree#fromSorted(int, Comparable[])}, so both trees have the same shape and only their memory layout
+ * differs. The report gives the time to build the pointer tree and to freeze it, in milliseconds, and then, for
+ * each tree, the time per lookup of {@value #FROZEN_LOOKUPS} uniform searches and as many floor queries, and the
+ * time per key of {@value #SCANS} range scans of {@value #SCAN_LENGTH} keys. Its default sizes go up to
+ * 10<sup>7</sup> keys. It also runs at 10<sup>8</sup> keys when given that size, but both trees then need about
+ * 8 GB of heap, e.g. {@code -Dbenchmark.jvmargs=-Xmx10g} with the {@code benchmark} target.</p>
+ *
+ * <p>The <b>recursive</b> suite runs the phases of the structures suite on the AVL-G tree as it was before its
+ * search, insertion and deletion were made iterative (see {@link RecursiveAVLGTree}), next to the current
+ * {@link AVLGTree}, both for G = 1 through {@value #RECURSIVE_MAX_G}. Both cache their heights, but the current
+ * tree also keeps subtree sizes in its nodes and serves finger searches, listeners and adaptive balance, which
+ * its updates pay for too.</p>
+ *
+ * <p>The <b>heights</b> suite shows what caching subtree heights in the nodes is worth. It compares the two
+ * flavors of {@link RecursiveAVLGTree}, whose nodes either recompute their heights by walking their subtrees or
+ * keep them cached, on an AVL-{@value #HEIGHTS_G} tree of n keys built directly in balanced form. It then times
+ * {@value #HEIGHT_OPS} insertions of new keys, as many calls to {@code getHeight()}, and the deletion of the
+ * inserted keys, and reports the median time per operation in microseconds.</p>
+ *
+ * <p>Run it as {@code java -cp build/bench avlg.bench.AVLGBenchmark [suite] [sizes...]}, e.g.
+ * {@code java -cp build/bench avlg.bench.AVLGBenchmark concurrent 1000 100000}, or through the {@code benchmark}
+ * target of {@code build.xml}. Without a suite, every suite runs. Without sizes, each suite uses its own defaults:
+ * 2<sup>10</sup>, 2<sup>14</sup> and 2<sup>18</sup> keys for structures, recursive and adaptive, 2<sup>10</sup> and
+ * 2<sup>18</sup> for concurrent, 10<sup>5</sup>, 10<sup>6</sup> and 10<sup>7</sup> for frozen, and 10<sup>4</sup>,
+ * 10<sup>5</sup> and 10<sup>6</sup> for heights.</p>
+ *
+ * @author Joe Barresi
+ *
+ * @see AVLGTree
+ * @see ConcurrentAVLGTree
+ * @see FrozenAVLGTree
+ * @see RecursiveAVLGTree
+ */
+public class AVLGBenchmark {
+
+	private static final int MIN_G = 1, MAX_G = 5;
+	private static final int WARMUP_ROUNDS = 3;
+	private static final int MEASURED_ROUNDS = 5;
+	private static final int MIN_LOOKUPS = 1 << 18;
+	private static final double ZIPF_EXPONENT = 0.99;
+	private static final int[] DEFAULT_SIZES = {1 << 10, 1 << 14, 1 << 18};
+
+	// Parameters of the concurrent suite.
+	private static final int[] THREAD_COUNTS = {1, 4, 16, 64};
+	private static final int[] CONCURRENT_SIZES = {1 << 10, 1 << 18};
+	private static final int CONCURRENT_G = 1;
+	private static final int TRIAL_MILLIS = 300;
+	private static final int RARE_WRITES = 100, FREQUENT_WRITES = 10;
+	private static final int THREAD_LOOKUPS = 1 << 14;
+
+	// Parameters of the adaptive suite.
+	private static final int TRACE_OPS = 1 << 20;
+	private static final int ADAPTIVE_START_G = 3;
+
+	// Updates per 20 operations of each trace of the adaptive suite.
+	private enum Trace {
+		READ_HEAVY(1), MIXED(10), WRITE_HEAVY(18);
+
+		final int updatesPer20;
+
+		Trace(int updatesPer20) {
+			this.updatesPer20 = updatesPer20;
+		}
+	}
+
+	// Parameters of the frozen suite.
+	private static final int[] FROZEN_SIZES = {100_000, 1_000_000, 10_000_000};
+	private static final int FROZEN_G = 1;
+	private static final int FROZEN_LOOKUPS = 1 << 20;
+	private static final int SCANS = 1 << 10, SCAN_LENGTH = 1000;
+
+	// Largest G of the recursive suite.
+	private static final int RECURSIVE_MAX_G = 3;
+
+	// Parameters of the heights suite.
+	private static final int[] HEIGHTS_SIZES = {10_000, 100_000, 1_000_000};
+	private static final int HEIGHTS_G = 1;
+	private static final int HEIGHT_OPS = 100;
+
+	private static final String[] SUITES = {"structures", "recursive", "adaptive", "concurrent", "frozen",
+			"heights"};
+
+	private static final String[] PHASES = {"insert", "search", "finger", "mixed", "delete"};
+
+	// Sink for lookup results, so that the JIT compiler cannot drop the lookups as dead code.
+	private static volatile int sink;
+
+	private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+	private enum Stream {
+		UNIFORM, SEQUENTIAL, ZIPFIAN
+	}
+
+	// The operations under test, over either an AVLGTree or the TreeMap baseline.
+	private interface Target {
+		void insert(Integer key);
+
+		boolean search(Integer key);
+
+		void delete(Integer key);
+	}
+
+	// The structures that also support finger search. Only these run the finger phase.
+	private interface FingerTarget extends Target {
+		boolean fingerSearch(Integer key);
+	}
+
+	private static Target avlg(int g) throws InvalidBalanceException {
+		return avlg(new AVLGTree<>(g));
+	}
+
+	private static Target avlg(AVLGTree<Integer> tree) {
+		return new FingerTarget() {
+			@Override
+			public void insert(Integer key) {
+				tree.insert(key);
+			}
+
+			@Override
+			public boolean search(Integer key) {
+				try {
+					return tree.search(key) != null;
+				} catch (EmptyTreeException e) {
+					return false;
+				}
+			}
+
+			@Override
+			public boolean fingerSearch(Integer key) {
+				try {
+					return tree.fingerSearch(key) != null;
+				} catch (EmptyTreeException e) {
+					return false;
+				}
+			}
+
+			@Override
+			public void delete(Integer key) {
+				try {
+					tree.delete(key);
+				} catch (EmptyTreeException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+	}
+
+	private static Target recursive(int g) throws InvalidBalanceException {
+		RecursiveAVLGTree<Integer> tree = new RecursiveAVLGTree<>(g, true);
+		return new Target() {
+			@Override
+			public void insert(Integer key) {
+				tree.insert(key);
+			}
+
+			@Override
+			public boolean search(Integer key) {
+				return tree.search(key);
+			}
+
+			@Override
+			public void delete(Integer key) {
+				tree.delete(key);
+			}
+		};
+	}
+
+	// Creates a fresh structure for every round of a benchmark.
+	private interface Factory {
+		Target create() throws InvalidBalanceException;
+	}
+
+	private static Target treeMap() {
+		TreeMap<Integer, Boolean> map = new TreeMap<>();
+		return new Target() {
+			@Override
+			public void insert(Integer key) {
+				map.put(key, Boolean.TRUE);
+			}
+
+			@Override
+			public boolean search(Integer key) {
+				return map.containsKey(key);
+			}
+
+			@Override
+			public void delete(Integer key) {
+				map.remove(key);
+			}
+		};
+	}
+
+	private static Target concurrent(int g) throws InvalidBalanceException {
+		ConcurrentAVLGTree<Integer> tree = new ConcurrentAVLGTree<>(g);
+		return new Target() {
+			@Override
+			public void insert(Integer key) {
+				tree.insert(key);
+			}
+
+			@Override
+			public boolean search(Integer key) {
+				try {
+					return tree.search(key) != null;
+				} catch (EmptyTreeException e) {
+					return false;
+				}
+			}
+
+			@Override
+			public void delete(Integer key) {
+				try {
+					tree.delete(key);
+				} catch (EmptyTreeException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+	}
+
+	private static Target readWriteLocked(int g) throws InvalidBalanceException {
+		Target tree = avlg(g);
+		ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		return new Target() {
+			@Override
+			public void insert(Integer key) {
+				lock.writeLock().lock();
+				try {
+					tree.insert(key);
+				} finally {
+					lock.writeLock().unlock();
+				}
+			}
+
+			@Override
+			public boolean search(Integer key) {
+				lock.readLock().lock();
+				try {
+					return tree.search(key);
+				} finally {
+					lock.readLock().unlock();
+				}
+			}
+
+			@Override
+			public void delete(Integer key) {
+				lock.writeLock().lock();
+				try {
+					tree.delete(key);
+				} finally {
+					lock.writeLock().unlock();
+				}
+			}
+		};
+	}
+
+	// The queries of the frozen suite, over either an AVLGTree or its frozen copy.
+	private interface Queries {
+		Integer search(Integer key) throws EmptyTreeException;
+
+		Integer floor(Integer key) throws EmptyTreeException;
+
+		Iterator<Integer> range(Integer lo, Integer hi);
+	}
+
+	private static Queries pointer(AVLGTree<Integer> tree) {
+		return new Queries() {
+			@Override
+			public Integer search(Integer key) throws EmptyTreeException {
+				return tree.search(key);
+			}
+
+			@Override
+			public Integer floor(Integer key) throws EmptyTreeException {
+				return tree.floor(key);
+			}
+
+			@Override
+			public Iterator<Integer> range(Integer lo, Integer hi) {
+				return tree.range(lo, hi);
+			}
+		};
+	}
+
+	private static Queries frozen(FrozenAVLGTree<Integer> tree) {
+		return new Queries() {
+			@Override
+			public Integer search(Integer key) throws EmptyTreeException {
+				return tree.search(key);
+			}
+
+			@Override
+			public Integer floor(Integer key) throws EmptyTreeException {
+				return tree.floor(key);
+			}
+
+			@Override
+			public Iterator<Integer> range(Integer lo, Integer hi) {
+				return tree.range(lo, hi);
+			}
+		};
+	}
+
+	// The keys of one configuration: n distinct keys, the order to insert (and later delete) them in, and a
+	// stream of lookups. All of them are boxed up front.
+	private static class Workload {
+		final Integer[] inserts;
+		final Integer[] lookups;
+
+		Workload(Stream stream, int n, Random random) {
+			inserts = new Integer[n];
+			for (int i = 0; i < n; i++) {
+				inserts[i] = 2 * i; // Even keys, so that odd ones could serve as misses
+			}
+			if (stream != Stream.SEQUENTIAL) {
+				shuffle(inserts, random);
+			}
+
+			lookups = new Integer[Math.max(n, MIN_LOOKUPS)];
+			switch (stream) {
+			case SEQUENTIAL:
+				for (int i = 0; i < lookups.length; i++) {
+					lookups[i] = 2 * (i % n);
+				}
+				break;
+			case UNIFORM:
+				for (int i = 0; i < lookups.length; i++) {
+					lookups[i] = 2 * random.nextInt(n);
+				}
+				break;
+			case ZIPFIAN:
+				// Rank r is drawn with probability proportional to 1 / (r + 1)^s. Ranks map to keys through
+				// the shuffled insertion order, so the hot keys are not clustered.
+				double[] cdf = new double[n];
+				double total = 0;
+				for (int r = 0; r < n; r++) {
+					total += 1 / Math.pow(r + 1, ZIPF_EXPONENT);
+					cdf[r] = total;
+				}
+				for (int i = 0; i < lookups.length; i++) {
+					int r = Arrays.binarySearch(cdf, random.nextDouble() * total);
+					lookups[i] = inserts[Math.min((r >= 0) ? r : -r - 1, n - 1)];
+				}
+				break;
+			}
+		}
+
+		private static void shuffle(Integer[] keys, Random random) {
+			for (int i = keys.length - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				Integer temp = keys[i];
+				keys[i] = keys[j];
+				keys[j] = temp;
+			}
+		}
+	}
+
+	private static com.sun.management.ThreadMXBean allocationCounter() {
+		try {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+				if (sun.isThreadAllocatedMemorySupported()) {
+					sun.setThreadAllocatedMemoryEnabled(true);
+					return sun;
+				}
+			}
+		} catch (UnsupportedOperationException | LinkageError e) {
+			// Fall through: allocation is reported as n/a.
+		}
+		return null;
+	}
+
+	private static long allocatedBytes() {
+		return (THREADS == null) ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	// Runs every phase once on a fresh target, storing nanoseconds and bytes per operation in time and alloc.
+	private static void round(Target target, Workload w, double[] time, double[] alloc) {
+		Integer[] inserts = w.inserts, lookups = w.lookups;
+		int hits = 0;
+		long t, a;
+
+		t = System.nanoTime();
+		a = allocatedBytes();
+		for (Integer key : inserts) {
+			target.insert(key);
+		}
+		record(0, inserts.length, t, a, time, alloc);
+
+		t = System.nanoTime();
+		a = allocatedBytes();
+		for (Integer key : lookups) {
+			hits += target.search(key) ? 1 : 0;
+		}
+		record(1, lookups.length, t, a, time, alloc);
+
+		if (target instanceof FingerTarget) {
+			FingerTarget fingers = (FingerTarget) target;
+			t = System.nanoTime();
+			a = allocatedBytes();
+			for (Integer key : lookups) {
+				hits += fingers.fingerSearch(key) ? 1 : 0;
+			}
+			record(2, lookups.length, t, a, time, alloc);
+		}
+
+		// Each group of ten operations deletes one key and puts it back, so the size stays the same.
+		t = System.nanoTime();
+		a = allocatedBytes();
+		for (int i = 0; i < lookups.length; i++) {
+			Integer key = lookups[i];
+			switch (i % 10) {
+			case 8:
+				target.delete(key);
+				break;
+			case 9:
+				target.insert(lookups[i - 1]);
+				break;
+			default:
+				hits += target.search(key) ? 1 : 0;
+			}
+		}
+		record(3, lookups.length, t, a, time, alloc);
+
+		t = System.nanoTime();
+		a = allocatedBytes();
+		for (Integer key : inserts) {
+			target.delete(key);
+		}
+		record(4, inserts.length, t, a, time, alloc);
+
+		sink += hits;
+	}
+
+	private static void record(int phase, int ops, long startTime, long startAlloc, double[] time, double[] alloc) {
+		time[phase] = (double) (System.nanoTime() - startTime) / ops;
+		alloc[phase] = (double) (allocatedBytes() - startAlloc) / ops;
+	}
+
+	private static double median(double[] values) {
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+
+	// Benchmarks one structure (g = 0 meaning the TreeMap baseline) on one workload, and prints its report line.
+	private static void run(int g, Stream stream, int n, Workload w) throws InvalidBalanceException {
+		run((g > 0) ? "AVL-" + g : "TreeMap", () -> (g > 0) ? avlg(g) : treeMap(), stream, n, w);
+	}
+
+	private static void run(String structure, Factory factory, Stream stream, int n, Workload w)
+			throws InvalidBalanceException {
+		boolean finger = false;
+		double[][] time = new double[MEASURED_ROUNDS][PHASES.length];
+		double[][] alloc = new double[MEASURED_ROUNDS][PHASES.length];
+		double[] scratchTime = new double[PHASES.length], scratchAlloc = new double[PHASES.length];
+		for (int i = 0; i < WARMUP_ROUNDS + MEASURED_ROUNDS; i++) {
+			boolean warm = i >= WARMUP_ROUNDS;
+			Target target = factory.create();
+			finger = target instanceof FingerTarget;
+			round(target, w, warm ? time[i - WARMUP_ROUNDS] : scratchTime, warm ? alloc[i - WARMUP_ROUNDS] : scratchAlloc);
+		}
+
+		StringBuilder line = new StringBuilder(String.format("%-10s %-11s %9d", structure, stream.name().toLowerCase(),
+				n));
+		for (int p = 0; p < PHASES.length; p++) {
+			if (p == 2 && !finger) {
+				line.append(String.format(" %9s %7s", "-", "-"));
+				continue;
+			}
+			double[] t = new double[MEASURED_ROUNDS], a = new double[MEASURED_ROUNDS];
+			for (int i = 0; i < MEASURED_ROUNDS; i++) {
+				t[i] = time[i][p];
+				a[i] = alloc[i][p];
+			}
+			line.append(String.format(" %9.1f %7s", median(t),
+					(THREADS == null) ? "n/a" : String.format("%.1f", median(a))));
+		}
+		System.out.println(line);
+	}
+
+	// Runs one trial of the concurrent suite, in which every thread makes one update every writeEvery operations
+	// (never, if writeEvery is 0), and returns the operations per microsecond over all threads.
+	private static double trial(Target target, Integer[] keys, Integer[][] lookups, Integer[][] updates,
+			int writeEvery) throws InterruptedException {
+		for (Integer key : keys) {
+			target.insert(key);
+		}
+
+		int threads = lookups.length;
+		long[] counts = new long[threads];
+		long[] end = new long[1];
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] workers = new Thread[threads];
+		for (int id = 0; id < threads; id++) {
+			final int me = id;
+			workers[id] = new Thread(() -> {
+				Integer[] mine = lookups[me], writes = updates[me];
+				int found = 0, i = 0, w = 0;
+				long ops = 0;
+				awaitQuietly(start);
+				while (System.nanoTime() < end[0]) {
+					if (writeEvery > 0 && ops % writeEvery == 0) {
+						// Even-numbered updates insert a key of this thread, odd ones delete it again.
+						if ((w & 1) == 0) {
+							target.insert(writes[(w >>> 1) & (THREAD_LOOKUPS - 1)]);
+						} else {
+							target.delete(writes[(w >>> 1) & (THREAD_LOOKUPS - 1)]);
+						}
+						w++;
+					} else {
+						found += target.search(mine[i]) ? 1 : 0;
+						i = (i + 1) & (THREAD_LOOKUPS - 1);
+					}
+					ops++;
+				}
+				counts[me] = ops;
+				sink += found;
+			});
+		}
+
+		for (Thread worker : workers) {
+			worker.start();
+		}
+		long began = System.nanoTime();
+		end[0] = began + TRIAL_MILLIS * 1_000_000L;
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		double micros = (System.nanoTime() - began) / 1000.0;
+
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		return total / micros;
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// Benchmarks one structure (optimistic or read-write locked) with the given number of threads, and prints
+	// its report line.
+	private static void runThreads(boolean optimistic, int n, int threads, Random random)
+			throws InvalidBalanceException, InterruptedException {
+		Integer[] keys = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = 2 * i; // Even keys are loaded up front, odd ones are left to the updates
+		}
+		Workload.shuffle(keys, random);
+		Integer[][] lookups = new Integer[threads][THREAD_LOOKUPS];
+		Integer[][] updates = new Integer[threads][THREAD_LOOKUPS];
+		for (int id = 0; id < threads; id++) {
+			for (int i = 0; i < THREAD_LOOKUPS; i++) {
+				lookups[id][i] = keys[random.nextInt(n)];
+				updates[id][i] = 2 * (i * threads + id) + 1; // Disjoint between threads
+			}
+		}
+
+		StringBuilder line = new StringBuilder(String.format("%-10s %9d %7d", optimistic ? "optimistic" : "rw-lock",
+				n, threads));
+		for (int writeEvery : new int[] {0, RARE_WRITES, FREQUENT_WRITES}) {
+			double[] rates = new double[MEASURED_ROUNDS];
+			for (int i = 0; i < WARMUP_ROUNDS + MEASURED_ROUNDS; i++) {
+				Target target = optimistic ? concurrent(CONCURRENT_G) : readWriteLocked(CONCURRENT_G);
+				double rate = trial(target, keys, lookups, updates, writeEvery);
+				if (i >= WARMUP_ROUNDS) {
+					rates[i - WARMUP_ROUNDS] = rate;
+				}
+			}
+			line.append(String.format(" %12.2f", median(rates)));
+		}
+		System.out.println(line);
+	}
+
+	// Loads target with the keys of w, runs the trace on it, and returns the time per operation in nanoseconds.
+	private static double trace(Target target, Workload w, Trace trace) {
+		for (Integer key : w.inserts) {
+			target.insert(key);
+		}
+
+		Integer[] lookups = w.lookups;
+		Integer deleted = null;
+		int hits = 0;
+		long t = System.nanoTime();
+		for (int i = 0; i < TRACE_OPS; i++) {
+			Integer key = lookups[i % lookups.length];
+			if (i % 20 >= trace.updatesPer20) {
+				hits += target.search(key) ? 1 : 0;
+			} else if (deleted == null) {
+				target.delete(key); // Stored, since only the last deleted key is ever missing
+				deleted = key;
+			} else {
+				target.insert(deleted);
+				deleted = null;
+			}
+		}
+		double time = (double) (System.nanoTime() - t) / TRACE_OPS;
+		sink += hits;
+		return time;
+	}
+
+	// Runs every trace on one structure (g = 0 meaning the TreeMap baseline), adapting G if asked to, and prints
+	// its report line.
+	private static void runTraces(int g, boolean adaptive, int n, Workload w) throws InvalidBalanceException {
+		StringBuilder line = new StringBuilder(String.format("%-10s %9d",
+				adaptive ? "adaptive" : (g > 0) ? "AVL-" + g : "TreeMap", n));
+		for (Trace trace : Trace.values()) {
+			double[] time = new double[MEASURED_ROUNDS];
+			AVLGTree<Integer> tree = null;
+			for (int i = 0; i < WARMUP_ROUNDS + MEASURED_ROUNDS; i++) {
+				Target target;
+				if (g == 0) {
+					target = treeMap();
+				} else {
+					tree = new AVLGTree<>(g);
+					if (adaptive) {
+						tree.enableAdaptiveBalance(MIN_G, MAX_G);
+					}
+					target = avlg(tree);
+				}
+				double t = trace(target, w, trace);
+				if (i >= WARMUP_ROUNDS) {
+					time[i - WARMUP_ROUNDS] = t;
+				}
+			}
+			line.append(String.format(" %11.1f %3s", median(time), (tree == null) ? "-" : tree.getMaxImbalance()));
+		}
+		System.out.println(line);
+	}
+
+	// Runs the searches, floor queries and range scans of the frozen suite on one tree, and stores the time per
+	// lookup, per lookup and per scanned key in time[1], time[2] and time[3], in nanoseconds.
+	private static void queries(Queries tree, Integer[] searches, Integer[] floors, Integer[] scans, double[] time)
+			throws EmptyTreeException {
+		int hits = 0;
+		long t = System.nanoTime();
+		for (Integer key : searches) {
+			hits += (tree.search(key) != null) ? 1 : 0;
+		}
+		time[1] = (double) (System.nanoTime() - t) / searches.length;
+
+		t = System.nanoTime();
+		for (Integer key : floors) {
+			hits += (tree.floor(key) != null) ? 1 : 0;
+		}
+		time[2] = (double) (System.nanoTime() - t) / floors.length;
+
+		long scanned = 0;
+		t = System.nanoTime();
+		for (Integer lo : scans) {
+			Iterator<Integer> it = tree.range(lo, lo + 2 * (SCAN_LENGTH - 1));
+			while (it.hasNext()) {
+				hits += it.next() & 1;
+				scanned++;
+			}
+		}
+		time[3] = (double) (System.nanoTime() - t) / scanned;
+		sink += hits;
+	}
+
+	// Benchmarks a pointer tree of n keys against its frozen copy, and prints one report line for each.
+	private static void runFrozen(int n, Random random) throws InvalidBalanceException, EmptyTreeException {
+		Integer[] keys = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = 2 * i; // Even keys, so that the odd ones in between exercise floor
+		}
+		Integer[] searches = new Integer[FROZEN_LOOKUPS], floors = new Integer[FROZEN_LOOKUPS];
+		for (int i = 0; i < FROZEN_LOOKUPS; i++) {
+			searches[i] = keys[random.nextInt(n)];
+			floors[i] = keys[random.nextInt(n)] + 1;
+		}
+		Integer[] scans = new Integer[SCANS];
+		for (int i = 0; i < SCANS; i++) {
+			scans[i] = keys[random.nextInt(n)];
+		}
+
+		double[][] pointerTime = new double[MEASURED_ROUNDS][4], frozenTime = new double[MEASURED_ROUNDS][4];
+		double[] scratchPointer = new double[4], scratchFrozen = new double[4];
+		AVLGTree<Integer> tree = null;
+		FrozenAVLGTree<Integer> copy = null;
+		for (int i = 0; i < WARMUP_ROUNDS + MEASURED_ROUNDS; i++) {
+			boolean warm = i >= WARMUP_ROUNDS;
+			double[] p = warm ? pointerTime[i - WARMUP_ROUNDS] : scratchPointer;
+			double[] f = warm ? frozenTime[i - WARMUP_ROUNDS] : scratchFrozen;
+			tree = null; // Let the trees of the last round go before building new ones
+			copy = null;
+
+			long t = System.nanoTime();
+			tree = AVLGTree.fromSorted(FROZEN_G, keys);
+			p[0] = (System.nanoTime() - t) / 1e6;
+			t = System.nanoTime();
+			copy = tree.freeze();
+			f[0] = (System.nanoTime() - t) / 1e6;
+
+			queries(pointer(tree), searches, floors, scans, p);
+			queries(frozen(copy), searches, floors, scans, f);
+		}
+
+		printColumns("pointer", n, pointerTime, " %10.1f");
+		printColumns("frozen", n, frozenTime, " %10.1f");
+	}
+
+	// Prints a report line with the median of every column of time, over the measured rounds.
+	private static void printColumns(String structure, int n, double[][] time, String format) {
+		StringBuilder line = new StringBuilder(String.format("%-10s %9d", structure, n));
+		for (int c = 0; c < time[0].length; c++) {
+			double[] column = new double[MEASURED_ROUNDS];
+			for (int i = 0; i < MEASURED_ROUNDS; i++) {
+				column[i] = time[i][c];
+			}
+			line.append(String.format(format, median(column)));
+		}
+		System.out.println(line);
+	}
+
+	// Times the updates and height queries of the heights suite on a tree of n keys, and stores the time per
+	// insertion, getHeight() and deletion in time[0], time[1] and time[2], in microseconds.
+	private static void heightRound(boolean cached, Integer[] keys, Integer[] updates, double[] time)
+			throws InvalidBalanceException {
+		RecursiveAVLGTree<Integer> tree = RecursiveAVLGTree.fromSorted(HEIGHTS_G, cached, keys);
+		int heights = 0;
+		long t = System.nanoTime();
+		for (Integer key : updates) {
+			tree.insert(key);
+		}
+		time[0] = (System.nanoTime() - t) / 1e3 / updates.length;
+
+		t = System.nanoTime();
+		for (int i = 0; i < updates.length; i++) {
+			heights += tree.getHeight();
+		}
+		time[1] = (System.nanoTime() - t) / 1e3 / updates.length;
+
+		t = System.nanoTime();
+		for (Integer key : updates) {
+			tree.delete(key);
+		}
+		time[2] = (System.nanoTime() - t) / 1e3 / updates.length;
+		sink += heights + tree.getCount();
+	}
+
+	// Benchmarks recomputed against cached heights on n keys, and prints one report line for each.
+	private static void runHeights(int n, Random random) throws InvalidBalanceException {
+		Integer[] keys = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = 2 * i; // Even keys are loaded up front, odd ones are left to the updates
+		}
+		Integer[] updates = new Integer[HEIGHT_OPS];
+		for (int i = 0; i < HEIGHT_OPS; i++) {
+			updates[i] = 2 * random.nextInt(n) + 1; // Repeats are fine: duplicates are stored, and deleted, twice
+		}
+
+		for (boolean cached : new boolean[] {false, true}) {
+			double[][] time = new double[MEASURED_ROUNDS][3];
+			double[] scratch = new double[3];
+			for (int i = 0; i < WARMUP_ROUNDS + MEASURED_ROUNDS; i++) {
+				heightRound(cached, keys, updates, (i >= WARMUP_ROUNDS) ? time[i - WARMUP_ROUNDS] : scratch);
+			}
+			printColumns(cached ? "cached" : "recomputed", n, time, " %10.2f");
+		}
+	}
+
+	private static void printPhasesHeader() {
+		StringBuilder header = new StringBuilder(String.format("%-10s %-11s %9s", "structure", "stream", "keys"));
+		for (String phase : PHASES) {
+			header.append(String.format(" %9s %7s", phase + " ns", "B/op"));
+		}
+		System.out.println(header);
+	}
+
+	private static void structures(int[] sizes) throws InvalidBalanceException {
+		printPhasesHeader();
+
+		Random random = new Random(47);
+		for (int n : sizes) {
+			for (Stream stream : Stream.values()) {
+				Workload w = new Workload(stream, n, random);
+				run(0, stream, n, w);
+				for (int g = MIN_G; g <= MAX_G; g++) {
+					run(g, stream, n, w);
+				}
+			}
+		}
+	}
+
+	private static void recursive(int[] sizes) throws InvalidBalanceException {
+		printPhasesHeader();
+		Random random = new Random(47);
+		for (int n : sizes) {
+			for (Stream stream : Stream.values()) {
+				Workload w = new Workload(stream, n, random);
+				for (int g = MIN_G; g <= RECURSIVE_MAX_G; g++) {
+					int max = g;
+					run("recur-" + g, () -> recursive(max), stream, n, w);
+					run(g, stream, n, w);
+				}
+			}
+		}
+	}
+
+	private static void adaptive(int[] sizes) throws InvalidBalanceException {
+		StringBuilder header = new StringBuilder(String.format("%-10s %9s", "structure", "keys"));
+		for (Trace trace : Trace.values()) {
+			header.append(String.format(" %11s %3s", trace.name().toLowerCase().replace('_', '-'), "G"));
+		}
+		System.out.println(header);
+
+		Random random = new Random(47);
+		for (int n : sizes) {
+			Workload w = new Workload(Stream.UNIFORM, n, random);
+			runTraces(0, false, n, w);
+			for (int g = MIN_G; g <= MAX_G; g++) {
+				runTraces(g, false, n, w);
+			}
+			runTraces(ADAPTIVE_START_G, true, n, w);
+		}
+	}
+
+	private static void concurrent(int[] sizes) throws InvalidBalanceException, InterruptedException {
+		System.out.println("available processors: " + Runtime.getRuntime().availableProcessors());
+		System.out.println(String.format("%-10s %9s %7s %12s %12s %12s", "structure", "keys", "threads",
+				"ops/us 0%", "ops/us 1%", "ops/us 10%"));
+		Random random = new Random(47);
+		for (int n : sizes) {
+			for (int threads : THREAD_COUNTS) {
+				runThreads(false, n, threads, random);
+				runThreads(true, n, threads, random);
+			}
+		}
+	}
+
+	private static void frozen(int[] sizes) throws InvalidBalanceException, EmptyTreeException {
+		System.out.println(String.format("%-10s %9s %10s %10s %10s %10s", "structure", "keys", "build ms",
+				"search ns", "floor ns", "scan ns"));
+		Random random = new Random(47);
+		for (int n : sizes) {
+			runFrozen(n, random);
+		}
+	}
+
+	private static void heights(int[] sizes) throws InvalidBalanceException {
+		System.out.println(String.format("%-10s %9s %10s %10s %10s", "structure", "keys", "insert us", "height us",
+				"delete us"));
+		Random random = new Random(47);
+		for (int n : sizes) {
+			runHeights(n, random);
+		}
+	}
+
+	/**
+	 * Run the benchmark and print its report to standard output.
+	 * @param args An optional suite name (structures, recursive, adaptive, concurrent, frozen or heights; every suite
+	 *             runs if it is left out), followed by the tree sizes to test. Each suite has its own default sizes.
+	 * @throws InvalidBalanceException never, since only valid maximum imbalances are used.
+	 * @throws EmptyTreeException never, since the frozen suite only queries trees it has filled.
+	 * @throws InterruptedException if the main thread is interrupted while waiting for a concurrent trial to end.
+	 */
+	public static void main(String[] args) throws InvalidBalanceException, InterruptedException, EmptyTreeException {
+		String suite = "all";
+		int first = 0;
+		if (args.length > 0 && !Character.isDigit(args[0].charAt(0))) {
+			suite = args[0];
+			first = 1;
+		}
+		int[] sizes = null;
+		if (args.length > first) {
+			sizes = new int[args.length - first];
+			for (int i = first; i < args.length; i++) {
+				sizes[i - first] = Integer.parseInt(args[i]);
+				if (sizes[i - first] < 1) {
+					throw new IllegalArgumentException("Tree sizes must be positive: " + args[i]);
+				}
+			}
+		}
+
+		boolean all = suite.equals("all");
+		if (!all && !Arrays.asList(SUITES).contains(suite)) {
+			throw new IllegalArgumentException("Unknown suite: " + suite);
+		}
+		if (all || suite.equals("structures")) {
+			structures((sizes != null) ? sizes : DEFAULT_SIZES);
+		}
+		if (all || suite.equals("recursive")) {
+			recursive((sizes != null) ? sizes : DEFAULT_SIZES);
+		}
+		if (all || suite.equals("adaptive")) {
+			adaptive((sizes != null) ? sizes : DEFAULT_SIZES);
+		}
+		if (all || suite.equals("concurrent")) {
+			concurrent((sizes != null) ? sizes : CONCURRENT_SIZES);
+		}
+		if (all || suite.equals("frozen")) {
+			frozen((sizes != null) ? sizes : FROZEN_SIZES);
+		}
+		if (all || suite.equals("heights")) {
+			heights((sizes != null) ? sizes : HEIGHTS_SIZES);
+		}
+	}
+}
@@ -0,0 +1,239 @@
+package avlg.bench;
+
+import avlg.AVLGTree;
+import avlg.exceptions.InvalidBalanceException;
+
+/**
+ * <p>{@link RecursiveAVLGTree} keeps the recursive AVL-G tree that {@link AVLGTree} started out as, so that
+ * {@link AVLGBenchmark} can measure the current tree against it. It is only a point of comparison, and is not
+ * meant to be used anywhere else.</p>
+ *
+ * <p>Its search, insertion and deletion recurse down the tree, with up to two comparisons per level, and
+ * deletion searches for the key before it starts. It comes in two flavors:</p>
+ *  <ul>
+ *      <li>With <b>recomputed heights</b>, the nodes store no height, and every height the rebalancing needs is
+ *      computed by walking the whole subtree. This is the tree before heights were cached in the nodes.</li>
+ *      <li>With <b>cached heights</b>, every node stores its height and refreshes it on the way back up, which
+ *      is the tree before search, insertion and deletion were made iterative.</li>
+ *  </ul>
+ *
+ * @author Joe Barresi
+ *
+ * @see AVLGTree
+ * @see AVLGBenchmark
+ */
+class RecursiveAVLGTree<T extends Comparable<T>> {
+
+	private final int g;
+	private final boolean cachedHeights;
+	private int size;
+	private Node root;
+
+	private class Node {
+		Node left;
+		Node right;
+		T key;
+		int height;
+
+		Node(Node left, Node right, T key) {
+			this.left = left;
+			this.right = right;
+			this.key = key;
+			update();
+		}
+
+		// Walks the whole subtree, as the tree did before heights were cached.
+		int computeHeight() {
+			if (right == null && left == null) {
+				return 0;
+			} else if (right == null) {
+				return left.computeHeight() + 1;
+			} else if (left == null) {
+				return right.computeHeight() + 1;
+			} else {
+				return Math.max(left.computeHeight(), right.computeHeight()) + 1;
+			}
+		}
+
+		void update() {
+			if (cachedHeights) {
+				height = Math.max(height(left), height(right)) + 1;
+			}
+		}
+	}
+
+	/**
+	 * Create an empty tree.
+	 * @param maxImbalance The maximum imbalance allowed by the tree.
+	 * @param cachedHeights Whether the nodes cache their heights, or have them recomputed every time.
+	 * @throws InvalidBalanceException if maxImbalance is a value smaller than 1.
+	 */
+	RecursiveAVLGTree(int maxImbalance, boolean cachedHeights) throws InvalidBalanceException {
+		if (maxImbalance < 1) {
+			throw new InvalidBalanceException("Error creating a new AVL-G Tree");
+		}
+		g = maxImbalance;
+		this.cachedHeights = cachedHeights;
+	}
+
+	/**
+	 * Create a perfectly balanced tree out of sorted keys, without going through insert(). This is how the
+	 * benchmark loads a large tree with recomputed heights, whose insertions take time linear in its size.
+	 * @param maxImbalance The maximum imbalance allowed by the tree.
+	 * @param cachedHeights Whether the nodes cache their heights, or have them recomputed every time.
+	 * @param keys The keys to store, sorted in ascending order.
+	 * @param <T> The type of the keys.
+	 * @return A new tree that holds exactly the given keys.
+	 * @throws InvalidBalanceException if maxImbalance is a value smaller than 1.
+	 */
+	static <T extends Comparable<T>> RecursiveAVLGTree<T> fromSorted(int maxImbalance, boolean cachedHeights,
+			T[] keys) throws InvalidBalanceException {
+		RecursiveAVLGTree<T> tree = new RecursiveAVLGTree<>(maxImbalance, cachedHeights);
+		tree.root = tree.build(keys, 0, keys.length - 1);
+		tree.size = keys.length;
+		return tree;
+	}
+
+	private Node build(T[] keys, int lo, int hi) {
+		if (lo > hi) {
+			return null;
+		}
+		int mid = (lo + hi) >>> 1;
+		return new Node(build(keys, lo, mid - 1), build(keys, mid + 1, hi), keys[mid]);
+	}
+
+	private int height(Node obj) {
+		if (obj == null) {
+			return -1;
+		}
+		return cachedHeights ? obj.height : obj.computeHeight();
+	}
+
+	private int imbal(Node cur) {
+		return height(cur.left) - height(cur.right);
+	}
+
+	private Node rotateRight(Node tgt) {
+		Node temp = tgt.left;
+		tgt.left = temp.right;
+		temp.right = tgt;
+		tgt.update();
+		temp.update();
+		return temp;
+	}
+
+	private Node rotateLeft(Node tgt) {
+		Node temp = tgt.right;
+		tgt.right = temp.left;
+		temp.left = tgt;
+		tgt.update();
+		temp.update();
+		return temp;
+	}
+
+	private Node rotateLeftRight(Node tgt) {
+		tgt.left = rotateLeft(tgt.left);
+		return rotateRight(tgt);
+	}
+
+	private Node rotateRightLeft(Node tgt) {
+		tgt.right = rotateRight(tgt.right);
+		return rotateLeft(tgt);
+	}
+
+	private Node insertAux(T key, Node cur) {
+		if (cur == null) {
+			return new Node(null, null, key);
+		}
+
+		if (key.compareTo(cur.key) < 0) {
+			cur.left = insertAux(key, cur.left);
+			cur.update();
+			if (height(cur.left) - height(cur.right) > g) {
+				if (key.compareTo(cur.left.key) < 0) {
+					cur = rotateRight(cur);
+				} else {
+					cur = rotateLeftRight(cur);
+				}
+			}
+		} else {
+			cur.right = insertAux(key, cur.right);
+			cur.update();
+			if (height(cur.right) - height(cur.left) > g) {
+				if (key.compareTo(cur.right.key) > 0) {
+					cur = rotateLeft(cur);
+				} else {
+					cur = rotateRightLeft(cur);
+				}
+			}
+		}
+		return cur;
+	}
+
+	private Node foundAux(Node cur, T key) {
+		if (cur == null) {
+			return null;
+		} else if (cur.key.compareTo(key) == 0) {
+			return cur;
+		} else if (cur.key.compareTo(key) < 0) {
+			return foundAux(cur.right, key);
+		} else {
+			return foundAux(cur.left, key);
+		}
+	}
+
+	private Node deleteAux(T key, Node cur) {
+		if (cur == null) {
+			return null;
+		} else if (key.compareTo(cur.key) < 0) {
+			cur.left = deleteAux(key, cur.left);
+		} else if (key.compareTo(cur.key) > 0) {
+			cur.right = deleteAux(key, cur.right);
+		} else if (cur.left == null) {
+			return cur.right;
+		} else if (cur.right == null) {
+			return cur.left;
+		} else {
+			Node swap = cur.right;
+			while (swap.left != null) {
+				swap = swap.left;
+			}
+			cur.key = swap.key;
+			cur.right = deleteAux(swap.key, cur.right);
+		}
+
+		cur.update();
+		if (imbal(cur) > g) {
+			return (imbal(cur.left) >= 0) ? rotateRight(cur) : rotateLeftRight(cur);
+		} else if (imbal(cur) < -g) {
+			return (imbal(cur.right) <= 0) ? rotateLeft(cur) : rotateRightLeft(cur);
+		}
+		return cur;
+	}
+
+	void insert(T key) {
+		root = insertAux(key, root);
+		size++;
+	}
+
+	boolean search(T key) {
+		return foundAux(root, key) != null;
+	}
+
+	boolean delete(T key) {
+		if (!search(key)) {
+			return false;
+		}
+		root = deleteAux(key, root);
+		size--;
+		return true;
+	}
+
+	int getHeight() {
+		return height(root);
+	}
+
+	int getCount() {
+		return size;
+	}
+}
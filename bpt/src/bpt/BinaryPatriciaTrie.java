@@ -2,8 +2,10 @@ package bpt;
 
 import bpt.UnimplementedMethodException;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * <p>
@@ -14,37 +16,222 @@ import java.util.Iterator;
  * deal with huge alphabets.
  * </p>
  *
+ * <p>
+ * Keys are bit strings. Besides {@link String}s of '0' and '1' characters, the
+ * trie accepts {@code long}s (64 bits, most significant bit first),
+ * {@code byte[]}s (8 bits per byte, most significant bit first) and
+ * {@link BitSet}s together with a length. All of them name the same bit strings:
+ * {@code insert(5L)} stores the same key as {@code insert(new byte[] {0, 0, 0,
+ * 0, 0, 0, 0, 5})}, or as a 64-character {@link String} ending in "101".
+ * </p>
+ *
+ * <p>
+ * Internally, keys are packed 64 bits to a {@code long}, and edge labels are not
+ * copied out of them: every node labels itself with a range of the packed bits
+ * of a key stored below it, so a label costs one bit per bit, and labels are
+ * compared a word at a time.
+ * </p>
+ *
  * @author Joe Barresi
  */
 public class BinaryPatriciaTrie {
 
 	/*
-	 * We are giving you this class as an example of what your inner node might look
-	 * like. If you would prefer to use a size-2 array or hold other things in your
-	 * nodes, please feel free to do so. We can *guarantee* that a *correct*
-	 * implementation exists with *exactly* this data stored in the nodes.
+	 * The label of a node is the range [offset, offset + length) of the packed bits
+	 * of some key that passes through the node. Since every key that passes through
+	 * a node agrees on the bits above it, offset is also the depth of the node in
+	 * bits, and the label can be borrowed from any of those keys. size counts the
+	 * keys stored in the subtree of the node, the node itself included, and longest
+	 * is the length in bits of the longest of them (-1 if there are none).
 	 */
 	static class TrieNode {
 		TrieNode left, right;
-		String str;
+		long[] bits;
+		int offset, length;
+		int size, longest;
 		boolean isKey;
 
 		// Default constructor for your inner nodes.
 		TrieNode() {
-			this("", false);
+			this(NO_BITS, 0, 0, false);
 		}
 
 		// Non-default constructor.
-		TrieNode(String str, boolean isKey) {
+		TrieNode(long[] bits, int offset, int length, boolean isKey) {
 			left = right = null;
-			this.str = str;
+			this.bits = bits;
+			this.offset = offset;
+			this.length = length;
 			this.isKey = isKey;
+			this.size = isKey ? 1 : 0;
+			this.longest = isKey ? offset + length : -1;
+		}
+
+		// Recomputes the subtree statistics from the children.
+		void update() {
+			size = (isKey ? 1 : 0) + size(left) + size(right);
+			longest = Math.max(isKey ? offset + length : -1, Math.max(longest(left), longest(right)));
 		}
 	}
 
+	private static int size(TrieNode n) {
+		return (n == null) ? 0 : n.size;
+	}
+
+	private static int longest(TrieNode n) {
+		return (n == null) ? -1 : n.longest;
+	}
+
+	private static final long[] NO_BITS = new long[0];
+
 	private TrieNode root;
 	private int count;
+
+	// Reusable root-to-node path for insert and delete, so that they can walk down only once.
+	private TrieNode[] path = new TrieNode[16];
 	
+	// Bit i of a packed key; the shift only uses the low 6 bits of i.
+	static boolean bit(long[] bits, int i) {
+		return (bits[i >>> 6] << i) < 0;
+	}
+
+	// Bits [from, from + n) of a packed key, for 1 <= n <= 64, left-aligned in a long and padded with zeroes.
+	private static long chunk(long[] bits, int from, int n) {
+		int shift = from & 63;
+		long word = bits[from >>> 6] << shift;
+		if (shift + n > 64) {
+			word |= bits[(from >>> 6) + 1] >>> (64 - shift);
+		}
+		return (n == 64) ? word : word & ~(-1L >>> n);
+	}
+
+	// The same, for a key given as a String.
+	private static long chunk(String key, int from, int n) {
+		long word = 0;
+		for (int i = 0; i < n; i++) {
+			if (binaryDigit(key, from + i)) {
+				word |= Long.MIN_VALUE >>> i;
+			}
+		}
+		return word;
+	}
+
+	static boolean binaryDigit(String key, int i) {
+		char c = key.charAt(i);
+		if (c != '0' && c != '1') {
+			throw new IllegalArgumentException("Not a binary string: " + key);
+		}
+		return c == '1';
+	}
+
+	// Overwrites bits [from, from + n) of a packed key with the n leading bits of word, which must be
+	// padded with zeroes.
+	private static void put(long[] bits, int from, int n, long word) {
+		int shift = from & 63;
+		long mask = (n == 64) ? -1L : ~(-1L >>> n);
+		bits[from >>> 6] = (bits[from >>> 6] & ~(mask >>> shift)) | (word >>> shift);
+		if (shift + n > 64) {
+			int w = (from >>> 6) + 1;
+			bits[w] = (bits[w] & ~(mask << (64 - shift))) | (word << (64 - shift));
+		}
+	}
+
+	// Number of leading bits of a label, bits [offset, offset + n) of a packed key, that key agrees with when
+	// read from pos on. Stops at the end of either the label or the key, comparing 64 bits at a time.
+	static int commonPrefix(long[] bits, int offset, int n, long[] key, int pos, int length) {
+		int limit = Math.min(n, length - pos);
+		for (int i = 0; i < limit; i += 64) {
+			int m = Math.min(64, limit - i);
+			long diff = chunk(bits, offset + i, m) ^ chunk(key, pos + i, m);
+			if (diff != 0) {
+				return i + Long.numberOfLeadingZeros(diff);
+			}
+		}
+		return limit;
+	}
+
+	static int commonPrefix(long[] bits, int offset, int n, String key, int pos) {
+		int limit = Math.min(n, key.length() - pos);
+		for (int i = 0; i < limit; i += 64) {
+			int m = Math.min(64, limit - i);
+			long diff = chunk(bits, offset + i, m) ^ chunk(key, pos + i, m);
+			if (diff != 0) {
+				return i + Long.numberOfLeadingZeros(diff);
+			}
+		}
+		return limit;
+	}
+
+	private static int commonPrefix(TrieNode n, long[] key, int pos, int length) {
+		return commonPrefix(n.bits, n.offset, n.length, key, pos, length);
+	}
+
+	private static int commonPrefix(TrieNode n, String key, int pos) {
+		return commonPrefix(n.bits, n.offset, n.length, key, pos);
+	}
+
+	// Makes sure the path buffer can hold every node on the way to a key of the given length.
+	private void ensurePath(int length) {
+		if (path.length < length + 1) {
+			path = new TrieNode[Math.max(length + 1, 2 * path.length)];
+		}
+	}
+
+	// Replaces n, which has a single child, by that child. The child's bits come from a key below n, which
+	// agrees with the label of n, so widening its range over the label of n is enough.
+	private static void merge(TrieNode parent, TrieNode n) {
+		TrieNode child = (n.left != null) ? n.left : n.right;
+		child.offset = n.offset;
+		child.length += n.length;
+		hang(parent, child);
+	}
+
+	// Hangs child under parent, on the side given by the first bit of its label.
+	private static void hang(TrieNode parent, TrieNode child) {
+		if (bit(child.bits, child.offset)) {
+			parent.right = child;
+		} else {
+			parent.left = child;
+		}
+	}
+
+	static long[] pack(String key) {
+		long[] bits = new long[(key.length() + 63) >>> 6];
+		for (int i = 0; i < key.length(); i++) {
+			if (binaryDigit(key, i)) {
+				bits[i >>> 6] |= Long.MIN_VALUE >>> i;
+			}
+		}
+		return bits;
+	}
+
+	static long[] pack(byte[] key) {
+		long[] bits = new long[(key.length + 7) >>> 3];
+		for (int i = 0; i < key.length; i++) {
+			bits[i >>> 3] |= (key[i] & 0xFFL) << (56 - 8 * (i & 7));
+		}
+		return bits;
+	}
+
+	static long[] pack(BitSet key, int length) {
+		if (length < 0) {
+			throw new IllegalArgumentException("Negative key length: " + length);
+		}
+		long[] bits = new long[(length + 63) >>> 6];
+		for (int i = key.nextSetBit(0); i >= 0 && i < length; i = key.nextSetBit(i + 1)) {
+			bits[i >>> 6] |= Long.MIN_VALUE >>> i;
+		}
+		return bits;
+	}
+
+	// The first length bits of a packed key, as a String of '0' and '1' characters.
+	private static String spell(long[] bits, int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = bit(bits, i) ? '1' : '0';
+		}
+		return new String(chars);
+	}
 
 	/**
 	 * Simple constructor that will initialize the internals of {@code this}.
@@ -55,33 +242,81 @@ public class BinaryPatriciaTrie {
 	}
 
 	/**
-	 * Searches the trie for a given key.
+	 * Searches the trie for a given key. The key is read in place, without being
+	 * packed, so the search allocates nothing.
 	 *
 	 * @param key The input {@link String} key.
 	 * @return {@code true} if and only if key is in the trie, {@code false}
 	 *         otherwise.
+	 * @throws IllegalArgumentException if key holds characters other than '0' and
+	 *                                  '1'.
 	 */
 	public boolean search(String key) {
 		if (count == 0) {
 			return false;
 		}
 
-		String res = key;
 		TrieNode cur = root;
-		
-		// Assume we are properly searching.
-		while (res.length() > 0) {
-			cur = (res.charAt(0) == '0') ? cur.left : cur.right;
-			if (cur == null || res.length() < cur.str.length() || 
-					!cur.str.equals(res.substring(0, cur.str.length()))) {
+		int pos = 0; // Number of bits of key matched so far
+		while (pos < key.length()) {
+			cur = binaryDigit(key, pos) ? cur.right : cur.left;
+			if (cur == null || commonPrefix(cur, key, pos) < cur.length) {
 				return false;
 			}
-			if (cur.str.length() < res.length()) {
-				res = res.substring(cur.str.length());
-			} else {
-				res = "";
-			}
+			pos += cur.length;
+		}
+		return cur.isKey;
+	}
+
+	/**
+	 * Searches the trie for a 64-bit key.
+	 *
+	 * @param key The key, read from its most significant bit down.
+	 * @return {@code true} if and only if key is in the trie, {@code false}
+	 *         otherwise.
+	 */
+	public boolean search(long key) {
+		return search(new long[] { key }, Long.SIZE);
+	}
+
+	/**
+	 * Searches the trie for a key given as bytes.
+	 *
+	 * @param key The key, 8 bits per byte, each byte read from its most
+	 *            significant bit down.
+	 * @return {@code true} if and only if key is in the trie, {@code false}
+	 *         otherwise.
+	 */
+	public boolean search(byte[] key) {
+		return search(pack(key), 8 * key.length);
+	}
+
+	/**
+	 * Searches the trie for a key given as a {@link BitSet}.
+	 *
+	 * @param key    The key: its bit i is {@code key.get(i)}.
+	 * @param length The number of bits in the key.
+	 * @return {@code true} if and only if key is in the trie, {@code false}
+	 *         otherwise.
+	 * @throws IllegalArgumentException if length is negative.
+	 */
+	public boolean search(BitSet key, int length) {
+		return search(pack(key, length), length);
+	}
 
+	private boolean search(long[] key, int length) {
+		if (count == 0) {
+			return false;
+		}
+
+		TrieNode cur = root;
+		int pos = 0;
+		while (pos < length) {
+			cur = bit(key, pos) ? cur.right : cur.left;
+			if (cur == null || commonPrefix(cur, key, pos, length) < cur.length) {
+				return false;
+			}
+			pos += cur.length;
 		}
 		return cur.isKey;
 	}
@@ -92,81 +327,97 @@ public class BinaryPatriciaTrie {
 	 * @param key The input {@link String} key.
 	 * @return {@code true} if and only if the key was not already in the trie,
 	 *         {@code false} otherwise.
+	 * @throws IllegalArgumentException if key holds characters other than '0' and
+	 *                                  '1'.
 	 */
 	public boolean insert(String key) {
-		String res = key;
-		TrieNode cur = root, par = root;
-		boolean isLeft = false, retVal = !search(key);
-		// Assume we are properly searching.
-		if (retVal) {
-			count++;
-			while (res.length() > 0) {
-				par = cur;
-				cur = (res.charAt(0) == '0') ? cur.left : cur.right;
-				isLeft = (res.charAt(0) == '0') ? true : false;
-				if (cur == null || res.length() < cur.str.length()
-						|| !cur.str.equals(res.substring(0, cur.str.length())))
-					break;
-
-				res = res.substring(cur.str.length());
-			}
+		return insert(pack(key), key.length());
+	}
 
-			if (cur == null) {
-				if (isLeft) {
-					par.left = new TrieNode(res, true);
-				} else {
-					par.right = new TrieNode(res, true);
+	/**
+	 * Inserts a 64-bit key into the trie.
+	 *
+	 * @param key The key, read from its most significant bit down.
+	 * @return {@code true} if and only if the key was not already in the trie,
+	 *         {@code false} otherwise.
+	 */
+	public boolean insert(long key) {
+		return insert(new long[] { key }, Long.SIZE);
+	}
+
+	/**
+	 * Inserts a key given as bytes into the trie.
+	 *
+	 * @param key The key, 8 bits per byte, each byte read from its most
+	 *            significant bit down.
+	 * @return {@code true} if and only if the key was not already in the trie,
+	 *         {@code false} otherwise.
+	 */
+	public boolean insert(byte[] key) {
+		return insert(pack(key), 8 * key.length);
+	}
+
+	/**
+	 * Inserts a key given as a {@link BitSet} into the trie.
+	 *
+	 * @param key    The key: its bit i is {@code key.get(i)}.
+	 * @param length The number of bits in the key.
+	 * @return {@code true} if and only if the key was not already in the trie,
+	 *         {@code false} otherwise.
+	 * @throws IllegalArgumentException if length is negative.
+	 */
+	public boolean insert(BitSet key, int length) {
+		return insert(pack(key, length), length);
+	}
+
+	// Finds and inserts key in a single descent. The packed key becomes owned by the trie, which borrows
+	// labels from it.
+	private boolean insert(long[] key, int length) {
+		ensurePath(length);
+		TrieNode cur = root;
+		int pos = 0, depth = 0;
+		while (true) {
+			path[depth++] = cur; // Every node on the path gains key, if it turns out to be new
+			if (pos == length) {
+				if (cur.isKey) {
+					Arrays.fill(path, 0, depth, null);
+					return false;
 				}
-			} else if(res.equals("")) {
 				cur.isKey = true;
-			} else if (cur.str.contains(res)) {
-				String rem = cur.str.substring(res.length());
-				cur.str = rem;
-				if (isLeft) {
-					par.left = new TrieNode(res, true);
-					if (rem.charAt(0) == '0') {
-						par.left.left = cur;
-					} else {
-						par.left.right = cur;
-					}
-				} else {
-					par.right = new TrieNode(res, true);
-					if (rem.charAt(0) == '0') {
-						par.right.left = cur;
-					} else {
-						par.right.right = cur;
-					}
-				}
-			} else {
-				String common = "";
-				int i = 0;
-				while (res.charAt(i) == cur.str.charAt(i)) {
-					common += res.charAt(i);
-					i += 1;
-				}
+				break;
+			}
 
-				String exist = cur.str.substring(common.length());
-				cur.str = exist;
-				String newStr = res.substring(common.length());
-				TrieNode split;
-				if (isLeft) {
-					par.left = new TrieNode(common, false);
-					split = par.left;
-				} else {
-					par.right = new TrieNode(common, false);
-					split = par.right;
-				}
-			
-				if (exist.charAt(0) == '0') {
-					split.left = cur;
-					split.right = new TrieNode(newStr, true);
+			TrieNode next = bit(key, pos) ? cur.right : cur.left;
+			if (next == null) {
+				hang(cur, new TrieNode(key, pos, length - pos, true));
+				break;
+			}
+			int common = commonPrefix(next, key, pos, length);
+			if (common < next.length) {
+				// key leaves the label of next after common bits: split the label there.
+				TrieNode split = new TrieNode(next.bits, next.offset, common, false);
+				next.offset += common;
+				next.length -= common;
+				hang(split, next);
+				if (pos + common == length) {
+					split.isKey = true;
 				} else {
-					split.right = cur;
-					split.left = new TrieNode(newStr, true);
+					hang(split, new TrieNode(key, pos + common, length - pos - common, true));
 				}
+				split.update();
+				hang(cur, split);
+				break;
 			}
+			pos += next.length;
+			cur = next;
 		}
-		return retVal;
+
+		for (int i = depth - 1; i >= 0; i--) {
+			path[i].update();
+		}
+		Arrays.fill(path, 0, depth, null);
+		count++;
+		return true;
 	}
 
 	/**
@@ -175,55 +426,94 @@ public class BinaryPatriciaTrie {
 	 * @param key The {@link String} key to be deleted.
 	 * @return {@code true} if and only if key was contained by the trie before we
 	 *         attempted deletion, {@code false} otherwise.
+	 * @throws IllegalArgumentException if key holds characters other than '0' and
+	 *                                  '1'.
 	 */
 	public boolean delete(String key) {
-		String res = key;
-		TrieNode cur = root, par = root;
-		boolean isLeft = false, retVal = search(key);
-
-		if (retVal) {
-			count--;
-			
-			// We know this node can be found
-			while (res.length() > 0) {
-				par = cur;
-				cur = (res.charAt(0) == '0') ? cur.left : cur.right;
-				isLeft = (res.charAt(0) == '0') ? true : false;
-				res = res.substring(cur.str.length());
+		return delete(pack(key), key.length());
+	}
+
+	/**
+	 * Deletes a 64-bit key from the trie.
+	 *
+	 * @param key The key, read from its most significant bit down.
+	 * @return {@code true} if and only if key was contained by the trie before we
+	 *         attempted deletion, {@code false} otherwise.
+	 */
+	public boolean delete(long key) {
+		return delete(new long[] { key }, Long.SIZE);
+	}
+
+	/**
+	 * Deletes a key given as bytes from the trie.
+	 *
+	 * @param key The key, 8 bits per byte, each byte read from its most
+	 *            significant bit down.
+	 * @return {@code true} if and only if key was contained by the trie before we
+	 *         attempted deletion, {@code false} otherwise.
+	 */
+	public boolean delete(byte[] key) {
+		return delete(pack(key), 8 * key.length);
+	}
+
+	/**
+	 * Deletes a key given as a {@link BitSet} from the trie.
+	 *
+	 * @param key    The key: its bit i is {@code key.get(i)}.
+	 * @param length The number of bits in the key.
+	 * @return {@code true} if and only if key was contained by the trie before we
+	 *         attempted deletion, {@code false} otherwise.
+	 * @throws IllegalArgumentException if length is negative.
+	 */
+	public boolean delete(BitSet key, int length) {
+		return delete(pack(key, length), length);
+	}
+
+	// Finds and deletes key in a single descent, then prunes what the deletion leaves behind: a key node with a
+	// single child is merged into it, and so is a splitter left with a single child.
+	private boolean delete(long[] key, int length) {
+		ensurePath(length);
+		TrieNode cur = root;
+		int pos = 0, depth = 0;
+		while (pos < length) {
+			path[depth++] = cur;
+			cur = bit(key, pos) ? cur.right : cur.left;
+			if (cur == null || commonPrefix(cur, key, pos, length) < cur.length) {
+				Arrays.fill(path, 0, depth, null);
+				return false;
 			}
-			
-			if (cur.left != null && cur.right != null) {
-				cur.isKey = false;
-			} else if (cur.left != null) {
-				if (isLeft) {
-					String newStr = cur.str + cur.left.str;
-					cur.left.str = newStr;
-					par.left = cur.left;
-				} else {
-					String newStr = cur.str + cur.left.str;
-					cur.left.str = newStr;
-					par.right = cur.left;
-				}
-			} else if (cur.right != null) {
-				if (isLeft) {
-					String newStr = cur.str + cur.right.str;
-					cur.right.str = newStr;
-					par.left = cur.right;
-				} else {
-					String newStr = cur.str + cur.right.str;
-					cur.right.str = newStr;
-					par.right = cur.right;
-				}
+			pos += cur.length;
+		}
+		if (!cur.isKey) {
+			Arrays.fill(path, 0, depth, null);
+			return false;
+		}
+
+		cur.isKey = false;
+		cur.update();
+		count--;
+
+		if (cur != root && (cur.left == null || cur.right == null)) {
+			TrieNode par = path[depth - 1];
+			if (cur.left != null || cur.right != null) {
+				merge(par, cur);
 			} else {
-				if (isLeft) {
+				if (par.left == cur) {
 					par.left = null;
 				} else {
 					par.right = null;
 				}
+				if (par != root && !par.isKey) {
+					merge(path[depth - 2], par);
+				}
 			}
 		}
-			
-		return retVal;
+		// Merged nodes keep their statistics, and a node merged away is harmlessly updated.
+		for (int i = depth - 1; i >= 0; i--) {
+			path[i].update();
+		}
+		Arrays.fill(path, 0, depth, null);
+		return true;
 	}
 
 	/**
@@ -275,44 +565,201 @@ public class BinaryPatriciaTrie {
 	 *         exposing the elements in <i>symmetric order</i>.
 	 */
 	public Iterator<String> inorderTraversal() {
-		return new BPTIterator(this);
+		return new BPTIterator(root);
 	}
 
-	class BPTIterator<String> implements Iterator<String> {
-		ArrayList<String> words;
-		int ptr;
+	/*
+	 * Inorder walk over an explicit stack of the nodes whose left subtree is being
+	 * visited. The bits of the path to the top of the stack are kept in a single
+	 * buffer: since a label sits at the depth given by its offset, writing it there
+	 * overwrites exactly what the walk no longer needs. Memory is bounded by the
+	 * depth of the trie, and each key is spelled out only when it is returned.
+	 */
+	private class BPTIterator implements Iterator<String> {
+		private TrieNode[] stack = new TrieNode[16];
+		private int top = 0;
+		private long[] pathBits = new long[1];
+		private TrieNode pending; // Next key node to return, or null at the end
 
-		public BPTIterator(BinaryPatriciaTrie cur) {
-			words = new ArrayList<String>();
-			populate(cur.root, (String) "");
-			ptr = 0;
+		// Walks the subtree of start, which may be null. The bits above start are taken from its own label's key.
+		BPTIterator(TrieNode start) {
+			if (start != null) {
+				write(start.bits, 0, start.offset);
+				pushLeftSpine(start);
+			}
+			advance();
 		}
-		
-		private void populate(TrieNode cur, String tail) {
-			if (cur.left != null) {
-				populate(cur.left, (String) (tail + cur.str));
+
+		private void write(long[] bits, int from, int n) {
+			if (from + n > 64 * pathBits.length) {
+				pathBits = Arrays.copyOf(pathBits, Math.max(2 * pathBits.length, (from + n + 63) >>> 6));
 			}
-			
-			if (cur.isKey) {
-				words.add((String) (tail + cur.str));
+			for (int i = 0; i < n; i += 64) {
+				int m = Math.min(64, n - i);
+				put(pathBits, from + i, m, chunk(bits, from + i, m));
+			}
+		}
+
+		private void pushLeftSpine(TrieNode n) {
+			for (; n != null; n = n.left) {
+				if (top == stack.length) {
+					stack = Arrays.copyOf(stack, 2 * top);
+				}
+				stack[top++] = n;
+				write(n.bits, n.offset, n.length);
 			}
-			
-			if (cur.right != null) {
-				populate(cur.right, (String) (tail + cur.str));
+		}
+
+		private void advance() {
+			pending = null;
+			while (pending == null && top > 0) {
+				TrieNode n = stack[--top];
+				stack[top] = null;
+				if (n.isKey) {
+					pending = n;
+				}
+				// The right subtree only writes below the label of n, which stays in place until next().
+				pushLeftSpine(n.right);
 			}
 		}
-		
+
 		@Override
 		public boolean hasNext() {
-			return ptr < words.size();
+			return pending != null;
 		}
 
 		@Override
 		public String next() {
-			return words.get(ptr++);
+			if (pending == null) {
+				throw new NoSuchElementException();
+			}
+			String key = spell(pathBits, pending.offset + pending.length);
+			advance();
+			return key;
+		}
+	}
+
+	/**
+	 * Finds the longest key stored in the trie that is a prefix of key (key itself
+	 * included). This is the lookup of a routing table, which stores network
+	 * prefixes and matches addresses against them. It takes a single descent, and
+	 * allocates nothing but the returned {@link String}.
+	 *
+	 * @param key The input {@link String} key.
+	 * @return The longest stored prefix of key, or {@code null} if no stored key is
+	 *         a prefix of key.
+	 * @throws IllegalArgumentException if key holds characters other than '0' and
+	 *                                  '1'.
+	 */
+	public String longestPrefixOf(String key) {
+		TrieNode cur = root;
+		int pos = 0, best = root.isKey ? 0 : -1;
+		while (pos < key.length()) {
+			cur = binaryDigit(key, pos) ? cur.right : cur.left;
+			if (cur == null || commonPrefix(cur, key, pos) < cur.length) {
+				break;
+			}
+			pos += cur.length;
+			if (cur.isKey) {
+				best = pos;
+			}
 		}
-		
+		return (best < 0) ? null : key.substring(0, best);
+	}
+
+	/**
+	 * Finds the length of the longest key stored in the trie that is a prefix of a
+	 * 64-bit key, as in {@link #longestPrefixOf(String)}.
+	 *
+	 * @param key The key, read from its most significant bit down.
+	 * @return The length in bits of the longest stored prefix of key, or -1 if no
+	 *         stored key is a prefix of key.
+	 */
+	public int longestPrefixLength(long key) {
+		return longestPrefixLength(new long[] { key }, Long.SIZE);
 	}
+
+	/**
+	 * Finds the length of the longest key stored in the trie that is a prefix of a
+	 * key given as bytes, such as an IPv4 or IPv6 address, as in
+	 * {@link #longestPrefixOf(String)}.
+	 *
+	 * @param key The key, 8 bits per byte, each byte read from its most
+	 *            significant bit down.
+	 * @return The length in bits of the longest stored prefix of key, or -1 if no
+	 *         stored key is a prefix of key.
+	 */
+	public int longestPrefixLength(byte[] key) {
+		return longestPrefixLength(pack(key), 8 * key.length);
+	}
+
+	private int longestPrefixLength(long[] key, int length) {
+		TrieNode cur = root;
+		int pos = 0, best = root.isKey ? 0 : -1;
+		while (pos < length) {
+			cur = bit(key, pos) ? cur.right : cur.left;
+			if (cur == null || commonPrefix(cur, key, pos, length) < cur.length) {
+				break;
+			}
+			pos += cur.length;
+			if (cur.isKey) {
+				best = pos;
+			}
+		}
+		return best;
+	}
+
+	// The topmost node whose subtree holds exactly the keys that start with prefix, or null if there are none.
+	private TrieNode locate(String prefix) {
+		TrieNode cur = root;
+		int pos = 0;
+		while (pos < prefix.length()) {
+			cur = binaryDigit(prefix, pos) ? cur.right : cur.left;
+			if (cur == null) {
+				return null;
+			}
+			int common = commonPrefix(cur, prefix, pos);
+			if (pos + common == prefix.length()) {
+				return cur; // prefix ends within, or right at the end of, this label
+			} else if (common < cur.length) {
+				return null;
+			}
+			pos += cur.length;
+		}
+		return cur;
+	}
+
+	/**
+	 * Returns a lazy {@link Iterator} over the keys that start with prefix (prefix
+	 * itself included), in the same symmetric order as
+	 * {@link #inorderTraversal()}. Finding where these keys start takes a single
+	 * descent along prefix; after that, every key costs time proportional to its
+	 * length.
+	 *
+	 * @param prefix The prefix, as a {@link String} of '0' and '1' characters.
+	 * @return An {@link Iterator} over the stored keys that start with prefix.
+	 * @throws IllegalArgumentException if prefix holds characters other than '0'
+	 *                                  and '1'.
+	 */
+	public Iterator<String> keysWithPrefix(String prefix) {
+		return new BPTIterator(locate(prefix));
+	}
+
+	/**
+	 * Counts the keys that start with prefix (prefix itself included). Every node
+	 * keeps the number of keys in its subtree, so this takes a single descent along
+	 * prefix and allocates nothing.
+	 *
+	 * @param prefix The prefix, as a {@link String} of '0' and '1' characters.
+	 * @return The number of stored keys that start with prefix.
+	 * @throws IllegalArgumentException if prefix holds characters other than '0'
+	 *                                  and '1'.
+	 */
+	public int countWithPrefix(String prefix) {
+		TrieNode n = locate(prefix);
+		return (n == null) ? 0 : n.size;
+	}
+
 	/**
 	 * Finds the longest {@link String} stored in the Binary Patricia Trie.
 	 * 
@@ -331,20 +778,24 @@ public class BinaryPatriciaTrie {
 	 *         <b>11</b> would be the longest string. If our trie contained only 001
 	 *         and 010, <b>010</b> would be the longest string.
 	 *         </p>
+	 *
+	 *         <p>
+	 *         Every node keeps the length of the longest key below it, so this
+	 *         takes a single root-to-leaf walk, for keys of any length.
+	 *         </p>
 	 */
 	public String getLongest() {
-		Iterator<String> obj = this.inorderTraversal();
-		String longest = "";
-		while(obj.hasNext()) {
-			String cur = obj.next();
-
-			if (cur.length() > longest.length() || 
-				(cur.length() == longest.length() && Integer.parseInt(cur, 2) > Integer.parseInt(longest, 2))) {
-				longest = cur;
-			}
+		if (count == 0) {
+			return "";
+		}
+
+		// A key is a prefix of every key below it, so the longest key is a node without keys below it. Among
+		// keys of equal length, those on the right have a 1 where those on the left have a 0.
+		TrieNode cur = root;
+		while (longest(cur.left) >= 0 || longest(cur.right) >= 0) {
+			cur = (longest(cur.right) >= longest(cur.left)) ? cur.right : cur.left;
 		}
-		
-		return longest;
+		return spell(cur.bits, cur.offset + cur.length);
 	}
 
 	/**
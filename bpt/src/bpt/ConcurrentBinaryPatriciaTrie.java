@@ -0,0 +1,393 @@
+package bpt;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static bpt.BinaryPatriciaTrie.binaryDigit;
+import static bpt.BinaryPatriciaTrie.bit;
+import static bpt.BinaryPatriciaTrie.commonPrefix;
+import static bpt.BinaryPatriciaTrie.pack;
+
+/**
+ * <p>
+ * {@code ConcurrentBinaryPatriciaTrie} is a thread-safe Binary Patricia Trie
+ * for workloads where many threads test keys for membership while a few threads
+ * (typically a single one) add and remove them. It stores the same bit strings
+ * as {@link BinaryPatriciaTrie}, packed the same way.
+ * </p>
+ *
+ * <p>
+ * Searches take no lock at all, and never wait or retry: they follow
+ * {@code volatile} child references down from the root, and finish in at most
+ * one step per bit of the key, whatever the writers are doing. This makes them
+ * <em>wait-free</em>.
+ * </p>
+ *
+ * <p>
+ * Writers serialize on a lock, and never change a node that readers can reach.
+ * Instead, every insertion or deletion builds the (at most two) nodes it needs
+ * on the side: a new leaf, or a copy of the node whose label or key flag
+ * changes, or a split node together with the shortened copy of the node it
+ * splits. It then publishes them all at once, with a single compare-and-set on
+ * the child reference that pointed to the old node. A search therefore sees
+ * either the trie before an update or the trie after it, never anything in
+ * between, and it sees every update that completed before it started. Readers
+ * that are still walking through replaced nodes see the trie as it was when
+ * they got there; those nodes are reclaimed by the garbage collector once the
+ * last such reader leaves them.
+ * </p>
+ *
+ * @author Joe Barresi
+ *
+ * @see BinaryPatriciaTrie
+ */
+public class ConcurrentBinaryPatriciaTrie {
+
+	/*
+	 * Labels work as in BinaryPatriciaTrie. Everything but the child references is
+	 * final, so a node is safely published along with the reference to it, and a
+	 * change to a label or to the key flag means a new node.
+	 */
+	static final class Node {
+		final long[] bits;
+		final int offset, length;
+		final boolean isKey;
+		volatile Node left, right;
+
+		Node(long[] bits, int offset, int length, boolean isKey, Node left, Node right) {
+			this.bits = bits;
+			this.offset = offset;
+			this.length = length;
+			this.isKey = isKey;
+			this.left = left;
+			this.right = right;
+		}
+	}
+
+	private static final AtomicReferenceFieldUpdater<Node, Node> LEFT =
+			AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "left");
+	private static final AtomicReferenceFieldUpdater<Node, Node> RIGHT =
+			AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "right");
+	private static final AtomicReferenceFieldUpdater<ConcurrentBinaryPatriciaTrie, Node> ROOT =
+			AtomicReferenceFieldUpdater.newUpdater(ConcurrentBinaryPatriciaTrie.class, Node.class, "root");
+
+	private volatile Node root;
+	private volatile int count;
+	private final ReentrantLock writeLock;
+
+	/**
+	 * Simple constructor that will initialize the internals of {@code this}.
+	 */
+	public ConcurrentBinaryPatriciaTrie() {
+		root = new Node(new long[0], 0, 0, false, null, null);
+		count = 0;
+		writeLock = new ReentrantLock();
+	}
+
+	// The side of its parent that a non-root node hangs on, given by the first bit of its label.
+	private static boolean isRight(Node n) {
+		return bit(n.bits, n.offset);
+	}
+
+	// A node with the given label and children, which may be null and come in either order.
+	private static Node branch(long[] bits, int offset, int length, boolean isKey, Node a, Node b) {
+		boolean aRight = (a != null) ? isRight(a) : (b != null && !isRight(b));
+		return aRight ? new Node(bits, offset, length, isKey, b, a) : new Node(bits, offset, length, isKey, a, b);
+	}
+
+	private static Node withKeyFlag(Node n, boolean isKey) {
+		return new Node(n.bits, n.offset, n.length, isKey, n.left, n.right);
+	}
+
+	// A copy of child that also takes over the label of its parent, which it replaces.
+	private static Node widen(Node child, Node parent) {
+		return new Node(child.bits, parent.offset, parent.length + child.length, child.isKey, child.left,
+				child.right);
+	}
+
+	// Swaps old for repl under parent (null meaning the root) in a single step. Only the writer that holds the
+	// lock changes references, so the swap cannot fail unless that rule was broken.
+	private void publish(Node parent, Node old, Node repl) {
+		boolean swapped;
+		if (parent == null) {
+			swapped = ROOT.compareAndSet(this, old, repl);
+		} else if (isRight((old != null) ? old : repl)) {
+			swapped = RIGHT.compareAndSet(parent, old, repl);
+		} else {
+			swapped = LEFT.compareAndSet(parent, old, repl);
+		}
+		if (!swapped) {
+			throw new IllegalStateException("Trie changed by a writer that did not hold the lock");
+		}
+	}
+
+	/**
+	 * Searches the trie for a given key, without locking. The key is read in
+	 * place, so the search allocates nothing.
+	 *
+	 * @param key The input {@link String} key.
+	 * @return {@code true} if and only if key is in the trie, {@code false}
+	 *         otherwise.
+	 * @throws IllegalArgumentException if key holds characters other than '0' and
+	 *                                  '1'.
+	 */
+	public boolean search(String key) {
+		Node cur = root;
+		int pos = 0;
+		while (pos < key.length()) {
+			cur = binaryDigit(key, pos) ? cur.right : cur.left;
+			if (cur == null || commonPrefix(cur.bits, cur.offset, cur.length, key, pos) < cur.length) {
+				return false;
+			}
+			pos += cur.length;
+		}
+		return cur.isKey;
+	}
+
+	/**
+	 * Searches the trie for a 64-bit key, without locking.
+	 *
+	 * @param key The key, read from its most significant bit down.
+	 * @return {@code true} if and only if key is in the trie, {@code false}
+	 *         otherwise.
+	 */
+	public boolean search(long key) {
+		return search(new long[] { key }, Long.SIZE);
+	}
+
+	/**
+	 * Searches the trie for a key given as bytes, without locking.
+	 *
+	 * @param key The key, 8 bits per byte, each byte read from its most
+	 *            significant bit down.
+	 * @return {@code true} if and only if key is in the trie, {@code false}
+	 *         otherwise.
+	 */
+	public boolean search(byte[] key) {
+		return search(pack(key), 8 * key.length);
+	}
+
+	/**
+	 * Searches the trie for a key given as a {@link BitSet}, without locking.
+	 *
+	 * @param key    The key: its bit i is {@code key.get(i)}.
+	 * @param length The number of bits in the key.
+	 * @return {@code true} if and only if key is in the trie, {@code false}
+	 *         otherwise.
+	 * @throws IllegalArgumentException if length is negative.
+	 */
+	public boolean search(BitSet key, int length) {
+		return search(pack(key, length), length);
+	}
+
+	private boolean search(long[] key, int length) {
+		Node cur = root;
+		int pos = 0;
+		while (pos < length) {
+			cur = bit(key, pos) ? cur.right : cur.left;
+			if (cur == null || commonPrefix(cur.bits, cur.offset, cur.length, key, pos, length) < cur.length) {
+				return false;
+			}
+			pos += cur.length;
+		}
+		return cur.isKey;
+	}
+
+	/**
+	 * Inserts key into the trie, waiting for any other writer.
+	 *
+	 * @param key The input {@link String} key.
+	 * @return {@code true} if and only if the key was not already in the trie,
+	 *         {@code false} otherwise.
+	 * @throws IllegalArgumentException if key holds characters other than '0' and
+	 *                                  '1'.
+	 */
+	public boolean insert(String key) {
+		return insert(pack(key), key.length());
+	}
+
+	/**
+	 * Inserts a 64-bit key into the trie, waiting for any other writer.
+	 *
+	 * @param key The key, read from its most significant bit down.
+	 * @return {@code true} if and only if the key was not already in the trie,
+	 *         {@code false} otherwise.
+	 */
+	public boolean insert(long key) {
+		return insert(new long[] { key }, Long.SIZE);
+	}
+
+	/**
+	 * Inserts a key given as bytes into the trie, waiting for any other writer.
+	 *
+	 * @param key The key, 8 bits per byte, each byte read from its most
+	 *            significant bit down.
+	 * @return {@code true} if and only if the key was not already in the trie,
+	 *         {@code false} otherwise.
+	 */
+	public boolean insert(byte[] key) {
+		return insert(pack(key), 8 * key.length);
+	}
+
+	/**
+	 * Inserts a key given as a {@link BitSet} into the trie, waiting for any other
+	 * writer.
+	 *
+	 * @param key    The key: its bit i is {@code key.get(i)}.
+	 * @param length The number of bits in the key.
+	 * @return {@code true} if and only if the key was not already in the trie,
+	 *         {@code false} otherwise.
+	 * @throws IllegalArgumentException if length is negative.
+	 */
+	public boolean insert(BitSet key, int length) {
+		return insert(pack(key, length), length);
+	}
+
+	private boolean insert(long[] key, int length) {
+		writeLock.lock();
+		try {
+			Node par = null, cur = root;
+			int pos = 0;
+			while (true) {
+				if (pos == length) {
+					if (cur.isKey) {
+						return false;
+					}
+					publish(par, cur, withKeyFlag(cur, true));
+					break;
+				}
+
+				Node next = bit(key, pos) ? cur.right : cur.left;
+				if (next == null) {
+					publish(cur, null, new Node(key, pos, length - pos, true, null, null));
+					break;
+				}
+				int common = commonPrefix(next.bits, next.offset, next.length, key, pos, length);
+				if (common < next.length) {
+					// Split the label of next: its lower part and the new leaf (if any) go under a new node.
+					Node lower = new Node(next.bits, next.offset + common, next.length - common, next.isKey,
+							next.left, next.right);
+					Node leaf = (pos + common == length) ? null
+							: new Node(key, pos + common, length - pos - common, true, null, null);
+					publish(cur, next, branch(next.bits, next.offset, common, leaf == null, lower, leaf));
+					break;
+				}
+				pos += next.length;
+				par = cur;
+				cur = next;
+			}
+			count++;
+			return true;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Deletes key from the trie, waiting for any other writer.
+	 *
+	 * @param key The {@link String} key to be deleted.
+	 * @return {@code true} if and only if key was contained by the trie before we
+	 *         attempted deletion, {@code false} otherwise.
+	 * @throws IllegalArgumentException if key holds characters other than '0' and
+	 *                                  '1'.
+	 */
+	public boolean delete(String key) {
+		return delete(pack(key), key.length());
+	}
+
+	/**
+	 * Deletes a 64-bit key from the trie, waiting for any other writer.
+	 *
+	 * @param key The key, read from its most significant bit down.
+	 * @return {@code true} if and only if key was contained by the trie before we
+	 *         attempted deletion, {@code false} otherwise.
+	 */
+	public boolean delete(long key) {
+		return delete(new long[] { key }, Long.SIZE);
+	}
+
+	/**
+	 * Deletes a key given as bytes from the trie, waiting for any other writer.
+	 *
+	 * @param key The key, 8 bits per byte, each byte read from its most
+	 *            significant bit down.
+	 * @return {@code true} if and only if key was contained by the trie before we
+	 *         attempted deletion, {@code false} otherwise.
+	 */
+	public boolean delete(byte[] key) {
+		return delete(pack(key), 8 * key.length);
+	}
+
+	/**
+	 * Deletes a key given as a {@link BitSet} from the trie, waiting for any other
+	 * writer.
+	 *
+	 * @param key    The key: its bit i is {@code key.get(i)}.
+	 * @param length The number of bits in the key.
+	 * @return {@code true} if and only if key was contained by the trie before we
+	 *         attempted deletion, {@code false} otherwise.
+	 * @throws IllegalArgumentException if length is negative.
+	 */
+	public boolean delete(BitSet key, int length) {
+		return delete(pack(key, length), length);
+	}
+
+	private boolean delete(long[] key, int length) {
+		writeLock.lock();
+		try {
+			Node grand = null, par = null, cur = root;
+			int pos = 0;
+			while (pos < length) {
+				Node next = bit(key, pos) ? cur.right : cur.left;
+				if (next == null || commonPrefix(next.bits, next.offset, next.length, key, pos, length) < next.length) {
+					return false;
+				}
+				pos += next.length;
+				grand = par;
+				par = cur;
+				cur = next;
+			}
+			if (!cur.isKey) {
+				return false;
+			}
+
+			Node left = cur.left, right = cur.right;
+			if (par == null || (left != null && right != null)) {
+				publish(par, cur, withKeyFlag(cur, false));
+			} else if (left != null || right != null) {
+				publish(par, cur, widen((left != null) ? left : right, cur));
+			} else if (grand != null && !par.isKey) {
+				// par is a splitter, and would be left with a single child: the sibling replaces it.
+				publish(grand, par, widen((par.left == cur) ? par.right : par.left, par));
+			} else {
+				publish(par, cur, null);
+			}
+			count--;
+			return true;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Queries the trie for emptiness.
+	 *
+	 * @return {@code true} if and only if {@link #getSize()} == 0, {@code false}
+	 *         otherwise.
+	 */
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	/**
+	 * Returns the number of keys in the trie. While writers are active, this is
+	 * the size after the last update that completed.
+	 *
+	 * @return The number of keys in the trie.
+	 */
+	public int getSize() {
+		return count;
+	}
+}
@@ -1,6 +1,13 @@
 package bpt;
 import org.junit.Test;
 
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.Assert.*;
 
 /**
@@ -55,4 +62,233 @@ public class StudentTests {
         assertTrue("After inserting five strings and deleting one of them, the trie had some junk in it!",
                 trie.isJunkFree());
     }
-}
\ No newline at end of file
+
+    // Searches compare edge labels in place, at an offset into the key; check keys that end inside a label,
+    // run past it, or only match part of it.
+    @Test public void testSearchWithinLabels() {
+        BinaryPatriciaTrie trie = new BinaryPatriciaTrie();
+
+        assertTrue("String should be inserted successfully", trie.insert("0010"));
+        assertTrue("String should be inserted successfully", trie.insert("01"));
+        assertTrue("A key whose label was split by a later insertion should still be found.", trie.search("0010"));
+        assertTrue("A key that ends where an existing label splits should be found.", trie.search("01"));
+        assertFalse("A key that shares only part of a label should not be found.", trie.search("0110"));
+        assertFalse("A key that ends inside a label should not be found.", trie.search("001"));
+        assertFalse("A key that runs past a leaf should not be found.", trie.search("00101"));
+
+        String key = "1011000111010010110100001111000010101100110011001010101111110001";
+        assertTrue("String should be inserted successfully", trie.insert(key));
+        assertTrue("A 64-bit key should be found after its insertion.", trie.search(key));
+        assertFalse("A 64-bit key that differs in its last bit should not be found.",
+                trie.search(key.substring(0, 63) + "0"));
+        assertEquals("After inserting three strings, the trie should report three strings stored.", 3, trie.getSize());
+    }
+
+    // long, byte[] and BitSet keys name the same bit strings as their String spelling, including keys that
+    // straddle the 64-bit words they are packed into.
+    @Test public void testKeyTypes() {
+        BinaryPatriciaTrie trie = new BinaryPatriciaTrie();
+        String five = "0000000000000000000000000000000000000000000000000000000000000101";
+
+        assertTrue("A long key should be inserted successfully.", trie.insert(5L));
+        assertTrue("A long key should be found through its String spelling.", trie.search(five));
+        assertTrue("A long key should be found through its byte[] spelling.",
+                trie.search(new byte[] {0, 0, 0, 0, 0, 0, 0, 5}));
+        BitSet bits = new BitSet();
+        bits.set(61);
+        bits.set(63);
+        assertTrue("A long key should be found through its BitSet spelling.", trie.search(bits, 64));
+        assertFalse("A prefix of a long key should not be found.", trie.search(bits, 63));
+        assertFalse("The same key given twice should not be inserted again.", trie.insert(five));
+
+        String longKey = five + "110";
+        assertTrue("A key longer than 64 bits should be inserted successfully.", trie.insert(longKey));
+        assertTrue("A byte[] key should be inserted successfully.", trie.insert(new byte[] {(byte) 0x80}));
+        assertTrue("A key longer than 64 bits should be found.", trie.search(longKey));
+        assertFalse("A key that differs from a stored one in its 67th bit should not be found.",
+                trie.search(five + "111"));
+        assertTrue("A byte[] key should be found through its String spelling.", trie.search("10000000"));
+        assertEquals("After inserting three keys, the trie should report three keys stored.", 3, trie.getSize());
+
+        assertTrue("A long key should be deleted successfully.", trie.delete(5L));
+        assertFalse("A deleted long key should not be found.", trie.search(five));
+        assertTrue("Deleting a key should not lose the keys below it.", trie.search(longKey));
+        assertTrue("Deleting a key should not leave junk behind.", trie.isJunkFree());
+        Iterator<String> it = trie.inorderTraversal();
+        assertEquals("The inorder traversal should spell out packed keys.", longKey, it.next());
+        assertEquals("The inorder traversal should spell out packed keys.", "10000000", it.next());
+    }
+
+    // The traversal is lazy and rebuilds keys from a shared buffer; check the symmetric order on keys whose
+    // common prefixes run past the first 64-bit word, and that an exhausted iterator says so.
+    @Test public void testInorderTraversal() {
+        BinaryPatriciaTrie trie = new BinaryPatriciaTrie();
+        String prefix = "10101010101010101010101010101010101010101010101010101010101010101010"; // 68 bits
+        String[] inorder = {prefix + "00", prefix + "0", prefix + "01", prefix, prefix + "1", "11"};
+        for (String key : new String[] {prefix + "1", "11", prefix + "01", prefix, prefix + "0", prefix + "00"}) {
+            assertTrue("String should be inserted successfully", trie.insert(key));
+        }
+
+        Iterator<String> it = trie.inorderTraversal();
+        for (String key : inorder) {
+            assertTrue("The traversal ended before returning every key.", it.hasNext());
+            assertEquals("The traversal did not return the keys in symmetric order.", key, it.next());
+        }
+        assertFalse("The traversal should end after the last key.", it.hasNext());
+        try {
+            it.next();
+            fail("Calling next() on an exhausted traversal should throw.");
+        } catch (NoSuchElementException e) {
+            // Expected.
+        }
+        assertFalse("An empty trie should have an empty traversal.",
+                new BinaryPatriciaTrie().inorderTraversal().hasNext());
+    }
+
+    // A tiny routing table: 10.0.0.0/8, 10.1.0.0/16 and 192.168.0.0/16, matched against full IPv4 addresses.
+    @Test public void testPrefixQueries() {
+        BinaryPatriciaTrie trie = new BinaryPatriciaTrie();
+        String ten = "00001010", tenOne = ten + "00000001", home = "1100000010101000";
+        trie.insert(ten);
+        trie.insert(tenOne);
+        trie.insert(home);
+
+        assertEquals("The most specific route should win.", 16,
+                trie.longestPrefixLength(new byte[] {10, 1, 2, 3}));
+        assertEquals("An address outside 10.1/16 should fall back to 10/8.", 8,
+                trie.longestPrefixLength(new byte[] {10, 2, 2, 3}));
+        assertEquals("An address with no route should report -1.", -1,
+                trie.longestPrefixLength(new byte[] {11, 1, 2, 3}));
+        assertEquals("The longest stored prefix of a String key should be returned.", tenOne,
+                trie.longestPrefixOf(tenOne + "0000001100000100"));
+        assertNull("A key with no stored prefix should report null.", trie.longestPrefixOf("1"));
+
+        assertEquals("Every key starts with the empty prefix.", 3, trie.countWithPrefix(""));
+        assertEquals("Two keys start with 0000.", 2, trie.countWithPrefix("0000"));
+        assertEquals("A prefix that ends inside a label should still be counted.", 1, trie.countWithPrefix("11000"));
+        assertEquals("No key starts with 01.", 0, trie.countWithPrefix("01"));
+        assertEquals("A prefix that runs past every key should match nothing.", 0,
+                trie.countWithPrefix(home + "0"));
+
+        Iterator<String> it = trie.keysWithPrefix("000");
+        assertEquals("keysWithPrefix should return the matching keys in symmetric order.", tenOne, it.next());
+        assertEquals("keysWithPrefix should return the matching keys in symmetric order.", ten, it.next());
+        assertFalse("keysWithPrefix should only return keys that start with the prefix.", it.hasNext());
+        assertFalse("keysWithPrefix should be empty when nothing matches.", trie.keysWithPrefix("111").hasNext());
+
+        trie.delete(ten);
+        assertEquals("Deleting a key should update the prefix counts.", 1, trie.countWithPrefix("0000"));
+        assertEquals("After deleting 10/8, 10.2.2.3 should have no route.", -1,
+                trie.longestPrefixLength(new byte[] {10, 2, 2, 3}));
+    }
+
+    // insert and delete find out whether the key is there during their only descent; check both answers, and
+    // that deleting leaves no splitter with a single child behind, also when the empty key is involved.
+    @Test public void testSinglePassUpdates() {
+        BinaryPatriciaTrie trie = new BinaryPatriciaTrie();
+
+        assertTrue("String should be inserted successfully", trie.insert("0110"));
+        assertTrue("String should be inserted successfully", trie.insert("0101"));
+        assertTrue("String should be inserted successfully", trie.insert(""));
+        assertFalse("Inserting a key twice should report that it was already there.", trie.insert("0110"));
+        assertFalse("Deleting the splitter 01 should fail, since it is not a key.", trie.delete("01"));
+        assertFalse("Deleting a key that ends inside a label should fail.", trie.delete("011"));
+        assertFalse("Deleting a key that runs past a leaf should fail.", trie.delete("01100"));
+        assertEquals("Failed updates should not change the size.", 3, trie.getSize());
+
+        assertTrue("Deleting a stored key should succeed.", trie.delete("0110"));
+        assertTrue("Deleting a leaf should merge its splitter parent into the other child.", trie.isJunkFree());
+        assertTrue("Merging a splitter should not lose the keys below it.", trie.search("0101"));
+        assertEquals("Deleting a leaf should update the prefix counts.", 1, trie.countWithPrefix("01"));
+
+        assertTrue("Deleting the empty key should succeed.", trie.delete(""));
+        assertFalse("The empty key should be gone.", trie.search(""));
+        assertTrue("Deleting the empty key should keep the other keys.", trie.search("0101"));
+        assertTrue("Deleting the last key should succeed.", trie.delete("0101"));
+        assertTrue("After deleting every key, the trie should be empty.", trie.isEmpty());
+        assertTrue("After deleting every key, the trie should be junk-free.", trie.isJunkFree());
+    }
+
+    // getLongest follows the per-subtree maximum key lengths; check ties, keys longer than an int can parse,
+    // and that the statistics follow deletions.
+    @Test public void testGetLongest() {
+        BinaryPatriciaTrie trie = new BinaryPatriciaTrie();
+        assertEquals("An empty trie should report the empty string as its longest key.", "", trie.getLongest());
+
+        trie.insert("01");
+        trie.insert("11");
+        assertEquals("Ties should be broken in favor of the larger value.", "11", trie.getLongest());
+        trie.insert("001");
+        trie.insert("010");
+        assertEquals("Ties should be broken in favor of the larger value.", "010", trie.getLongest());
+
+        String wide = "1111111111111111111111111111111111111111"; // 40 bits, too long for Integer.parseInt
+        String wider = "0" + wide;
+        trie.insert(wide);
+        trie.insert(wider);
+        assertEquals("Keys longer than 32 bits should be compared by length.", wider, trie.getLongest());
+        trie.insert("1" + wide.substring(1) + "0");
+        assertEquals("Keys longer than 32 bits should be compared by value.", "1" + wide.substring(1) + "0",
+                trie.getLongest());
+
+        trie.delete("1" + wide.substring(1) + "0");
+        trie.delete(wider);
+        assertEquals("Deleting the longest keys should bring back the next longest.", wide, trie.getLongest());
+    }
+
+    // Readers search the concurrent trie without locking while a writer keeps inserting and deleting other keys:
+    // they should never miss a key that stays in the trie, nor find one that was never in it.
+    @Test public void testConcurrentReaders() throws InterruptedException {
+        ConcurrentBinaryPatriciaTrie trie = new ConcurrentBinaryPatriciaTrie();
+        assertTrue("A new trie should be empty.", trie.isEmpty());
+        assertTrue("String should be inserted successfully", trie.insert("0110"));
+        assertTrue("String should be inserted successfully", trie.insert(""));
+        assertFalse("Inserting a key twice should report that it was already there.", trie.insert("0110"));
+        assertFalse("A key that ends inside a label should not be found.", trie.search("01"));
+        assertTrue("Deleting the empty key should succeed.", trie.delete(""));
+        assertTrue("Deleting the empty key should keep the other keys.", trie.search("0110"));
+        assertTrue("Deleting the last key should succeed.", trie.delete("0110"));
+        assertTrue("After deleting every key, the trie should be empty.", trie.isEmpty());
+
+        long[] stable = new long[512];
+        Random random = new Random(47);
+        for (int i = 0; i < stable.length; i++) {
+            stable[i] = random.nextLong() & ~1L; // The writer only touches odd keys
+            trie.insert(stable[i]);
+        }
+        int size = trie.getSize();
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger errors = new AtomicInteger();
+        Thread[] readers = new Thread[3];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                int i = 0;
+                while (!done.get()) {
+                    long key = stable[i++ % stable.length];
+                    if (!trie.search(key) || trie.search(key ^ 2)) {
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+            readers[r].start();
+        }
+        Thread writer = new Thread(() -> {
+            Random keys = new Random(7);
+            for (int i = 0; i < 20000; i++) {
+                long key = keys.nextLong() | 1;
+                trie.insert(key);
+                trie.delete(key);
+            }
+            done.set(true);
+        });
+        writer.start();
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertEquals("Readers should always see the keys that stay in the trie, and only those.", 0, errors.get());
+        assertEquals("Inserting and deleting the same keys should leave the size unchanged.", size, trie.getSize());
+    }
+}
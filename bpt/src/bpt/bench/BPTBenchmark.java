@@ -0,0 +1,273 @@
+package bpt.bench;
+
+import bpt.BinaryPatriciaTrie;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * <p>{@link BPTBenchmark} is a self-contained performance harness for {@link BinaryPatriciaTrie}, over 64-bit keys.
+ * For every trie size and every key stream it measures:</p>
+ *  <ul>
+ *      <li><b>insert</b>: building the trie from empty, one key at a time,</li>
+ *      <li><b>hit</b>: searches for keys that are in the trie,</li>
+ *      <li><b>miss</b>: searches for keys that are not,</li>
+ *      <li><b>delete</b>: emptying the trie, one key at a time.</li>
+ *  </ul>
+ *
+ * <p>There are two key streams. <b>random</b> draws the keys uniformly at random, so the trie branches early and
+ * its edge labels are short. <b>sequential</b> uses consecutive numbers, which share a long common prefix that ends
+ * up in a single long label near the root. Every stream is run twice: once with the keys given as {@link String}s
+ * of 64 '0' and '1' characters, and once as {@code long}s.</p>
+ *
+ * <p>Every configuration runs {@value #WARMUP_ROUNDS} warm-up rounds, to let the JIT compiler settle, and then
+ * {@value #MEASURED_ROUNDS} measured rounds, of which the median is reported. The report gives, for each phase,
+ * the time and the number of bytes allocated per operation. Allocation is read from the per-thread counters of
+ * {@code com.sun.management.ThreadMXBean}, and shows as n/a on JVMs that do not have them. Keys are converted to
+ * bit strings before the clock starts, so the allocation figures only count what the trie itself allocates.</p>
+ *
+ * <p>Run it with the trie sizes to test as arguments, e.g.
+ * {@code java -cp build/bench bpt.bench.BPTBenchmark 1000 100000}, or through the {@code benchmark} target of
+ * {@code build.xml}. Without arguments it uses 2<sup>10</sup>, 2<sup>14</sup> and 2<sup>17</sup> keys.</p>
+ *
+ * @author Joe Barresi
+ *
+ * @see BinaryPatriciaTrie
+ */
+public class BPTBenchmark {
+
+	private static final int KEY_BITS = Long.SIZE;
+	private static final int WARMUP_ROUNDS = 3;
+	private static final int MEASURED_ROUNDS = 5;
+	private static final int MIN_LOOKUPS = 1 << 17;
+	private static final int[] DEFAULT_SIZES = {1 << 10, 1 << 14, 1 << 17};
+
+	private static final String[] PHASES = {"insert", "hit", "miss", "delete"};
+
+	// Sink for lookup results, so that the JIT compiler cannot drop the lookups as dead code.
+	private static volatile int sink;
+
+	private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+	private enum Stream {
+		RANDOM, SEQUENTIAL
+	}
+
+	private enum KeyType {
+		STRING, LONG
+	}
+
+	// The keys of one configuration: n distinct keys in insertion (and deletion) order, and streams of keys to
+	// look up that are and are not in the trie, both as longs and as bit strings.
+	private static class Workload {
+		final long[] keys;
+		final long[] hitKeys;
+		final String[] inserts;
+		final String[] hits;
+		final String[] misses;
+
+		Workload(Stream stream, int n, Random random) {
+			keys = new long[n];
+			if (stream == Stream.SEQUENTIAL) {
+				long start = random.nextLong() >>> 1;
+				for (int i = 0; i < n; i++) {
+					keys[i] = start + 2 * i; // Odd offsets are left out to serve as misses
+				}
+			} else {
+				for (int i = 0; i < n; i++) {
+					keys[i] = random.nextLong() & ~1L; // Likewise, only even keys are stored
+				}
+			}
+
+			inserts = new String[n];
+			for (int i = 0; i < n; i++) {
+				inserts[i] = toBits(keys[i]);
+			}
+			hitKeys = new long[Math.max(n, MIN_LOOKUPS)];
+			hits = new String[hitKeys.length];
+			misses = new String[hitKeys.length];
+			for (int i = 0; i < hitKeys.length; i++) {
+				hitKeys[i] = keys[random.nextInt(n)];
+				hits[i] = toBits(hitKeys[i]);
+				misses[i] = toBits(hitKeys[i] | 1);
+			}
+		}
+	}
+
+	// The key as a bit string of exactly 64 characters, most significant bit first.
+	private static String toBits(long key) {
+		char[] bits = new char[KEY_BITS];
+		for (int i = 0; i < KEY_BITS; i++) {
+			bits[i] = ((key >>> (KEY_BITS - 1 - i)) & 1) == 0 ? '0' : '1';
+		}
+		return new String(bits);
+	}
+
+	private static com.sun.management.ThreadMXBean allocationCounter() {
+		try {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+				if (sun.isThreadAllocatedMemorySupported()) {
+					sun.setThreadAllocatedMemoryEnabled(true);
+					return sun;
+				}
+			}
+		} catch (UnsupportedOperationException | LinkageError e) {
+			// Fall through: allocation is reported as n/a.
+		}
+		return null;
+	}
+
+	private static long allocatedBytes() {
+		return (THREADS == null) ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	// Runs every phase once on a fresh trie, storing nanoseconds and bytes per operation in time and alloc.
+	private static void round(Workload w, KeyType type, double[] time, double[] alloc) {
+		if (type == KeyType.LONG) {
+			roundLong(w, time, alloc);
+			return;
+		}
+
+		BinaryPatriciaTrie trie = new BinaryPatriciaTrie();
+		int found = 0;
+		long t, a;
+
+		t = System.nanoTime();
+		a = allocatedBytes();
+		for (String key : w.inserts) {
+			trie.insert(key);
+		}
+		record(0, w.inserts.length, t, a, time, alloc);
+
+		t = System.nanoTime();
+		a = allocatedBytes();
+		for (String key : w.hits) {
+			found += trie.search(key) ? 1 : 0;
+		}
+		record(1, w.hits.length, t, a, time, alloc);
+
+		t = System.nanoTime();
+		a = allocatedBytes();
+		for (String key : w.misses) {
+			found += trie.search(key) ? 1 : 0;
+		}
+		record(2, w.misses.length, t, a, time, alloc);
+
+		t = System.nanoTime();
+		a = allocatedBytes();
+		for (String key : w.inserts) {
+			trie.delete(key);
+		}
+		record(3, w.inserts.length, t, a, time, alloc);
+
+		sink += found;
+	}
+
+	// The same phases, with long keys. Misses are the hits with their lowest bit set.
+	private static void roundLong(Workload w, double[] time, double[] alloc) {
+		BinaryPatriciaTrie trie = new BinaryPatriciaTrie();
+		int found = 0;
+		long t, a;
+
+		t = System.nanoTime();
+		a = allocatedBytes();
+		for (long key : w.keys) {
+			trie.insert(key);
+		}
+		record(0, w.keys.length, t, a, time, alloc);
+
+		t = System.nanoTime();
+		a = allocatedBytes();
+		for (long key : w.hitKeys) {
+			found += trie.search(key) ? 1 : 0;
+		}
+		record(1, w.hitKeys.length, t, a, time, alloc);
+
+		t = System.nanoTime();
+		a = allocatedBytes();
+		for (long key : w.hitKeys) {
+			found += trie.search(key | 1) ? 1 : 0;
+		}
+		record(2, w.hitKeys.length, t, a, time, alloc);
+
+		t = System.nanoTime();
+		a = allocatedBytes();
+		for (long key : w.keys) {
+			trie.delete(key);
+		}
+		record(3, w.keys.length, t, a, time, alloc);
+
+		sink += found;
+	}
+
+	private static void record(int phase, int ops, long startTime, long startAlloc, double[] time, double[] alloc) {
+		time[phase] = (double) (System.nanoTime() - startTime) / ops;
+		alloc[phase] = (double) (allocatedBytes() - startAlloc) / ops;
+	}
+
+	private static double median(double[] values) {
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+
+	// Benchmarks the trie on one workload, and prints its report line.
+	private static void run(Stream stream, KeyType type, int n, Workload w) {
+		double[][] time = new double[MEASURED_ROUNDS][PHASES.length];
+		double[][] alloc = new double[MEASURED_ROUNDS][PHASES.length];
+		double[] scratchTime = new double[PHASES.length], scratchAlloc = new double[PHASES.length];
+		for (int i = 0; i < WARMUP_ROUNDS + MEASURED_ROUNDS; i++) {
+			boolean warm = i >= WARMUP_ROUNDS;
+			round(w, type, warm ? time[i - WARMUP_ROUNDS] : scratchTime, warm ? alloc[i - WARMUP_ROUNDS] : scratchAlloc);
+		}
+
+		StringBuilder line = new StringBuilder(String.format("%-11s %-7s %9d", stream.name().toLowerCase(),
+				type.name().toLowerCase(), n));
+		for (int p = 0; p < PHASES.length; p++) {
+			double[] t = new double[MEASURED_ROUNDS], a = new double[MEASURED_ROUNDS];
+			for (int i = 0; i < MEASURED_ROUNDS; i++) {
+				t[i] = time[i][p];
+				a[i] = alloc[i][p];
+			}
+			line.append(String.format(" %9.1f %7s", median(t),
+					(THREADS == null) ? "n/a" : String.format("%.1f", median(a))));
+		}
+		System.out.println(line);
+	}
+
+	/**
+	 * Run the benchmark and print its report to standard output.
+	 * @param args The trie sizes to test. Defaults to 2<sup>10</sup>, 2<sup>14</sup> and 2<sup>17</sup>.
+	 */
+	public static void main(String[] args) {
+		int[] sizes = DEFAULT_SIZES;
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				sizes[i] = Integer.parseInt(args[i]);
+				if (sizes[i] < 1) {
+					throw new IllegalArgumentException("Trie sizes must be positive: " + args[i]);
+				}
+			}
+		}
+
+		StringBuilder header = new StringBuilder(String.format("%-11s %-7s %9s", "stream", "type", "keys"));
+		for (String phase : PHASES) {
+			header.append(String.format(" %9s %7s", phase + " ns", "B/op"));
+		}
+		System.out.println(header);
+
+		Random random = new Random(47);
+		for (int n : sizes) {
+			for (Stream stream : Stream.values()) {
+				Workload w = new Workload(stream, n, random);
+				for (KeyType type : KeyType.values()) {
+					run(stream, type, n, w);
+				}
+			}
+		}
+	}
+}
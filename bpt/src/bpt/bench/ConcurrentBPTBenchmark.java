@@ -0,0 +1,242 @@
+package bpt.bench;
+
+import bpt.BinaryPatriciaTrie;
+import bpt.ConcurrentBinaryPatriciaTrie;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>{@link ConcurrentBPTBenchmark} measures how lookups scale with the number of reader threads while a writer
+ * keeps changing the trie, over 64-bit keys. It compares {@link ConcurrentBinaryPatriciaTrie}, whose searches take
+ * no lock, against a {@link BinaryPatriciaTrie} guarded by a {@link ReentrantReadWriteLock}.</p>
+ *
+ * <p>Each trial fills the trie with n random keys, then runs 1, 2, 4 and 8 reader threads next to a single writer
+ * for {@value #TRIAL_MILLIS} ms. Readers search for keys drawn from the stored ones; the writer alternately inserts
+ * a fresh key and deletes the one it inserted before, so that the size stays put. The report gives, for each
+ * number of readers, the total lookups per microsecond across all readers, and the updates per microsecond of the
+ * writer. Each configuration is run {@value #WARMUP_ROUNDS} times to warm up, and then {@value #MEASURED_ROUNDS}
+ * times, of which the median is reported. Numbers above the count of available processors mostly measure the
+ * scheduler.</p>
+ *
+ * <p>Run it with the trie sizes to test as arguments, e.g.
+ * {@code java -cp build/bench bpt.bench.ConcurrentBPTBenchmark 1000 100000}, or through the
+ * {@code benchmark-concurrent} target of {@code build.xml}. Without arguments it uses 2<sup>10</sup> and
+ * 2<sup>17</sup> keys.</p>
+ *
+ * @author Joe Barresi
+ *
+ * @see ConcurrentBinaryPatriciaTrie
+ */
+public class ConcurrentBPTBenchmark {
+
+	private static final int TRIAL_MILLIS = 500;
+	private static final int WARMUP_ROUNDS = 2;
+	private static final int MEASURED_ROUNDS = 3;
+	private static final int LOOKUPS = 1 << 16;
+	private static final int[] READERS = {1, 2, 4, 8};
+	private static final int[] DEFAULT_SIZES = {1 << 10, 1 << 17};
+
+	// Sink for lookup results, so that the JIT compiler cannot drop the lookups as dead code.
+	private static volatile int sink;
+
+	// The operations under test, over either trie.
+	private interface Target {
+		boolean search(long key);
+
+		void insert(long key);
+
+		void delete(long key);
+	}
+
+	private static Target lockFree() {
+		ConcurrentBinaryPatriciaTrie trie = new ConcurrentBinaryPatriciaTrie();
+		return new Target() {
+			@Override
+			public boolean search(long key) {
+				return trie.search(key);
+			}
+
+			@Override
+			public void insert(long key) {
+				trie.insert(key);
+			}
+
+			@Override
+			public void delete(long key) {
+				trie.delete(key);
+			}
+		};
+	}
+
+	private static Target readWriteLocked() {
+		BinaryPatriciaTrie trie = new BinaryPatriciaTrie();
+		ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		return new Target() {
+			@Override
+			public boolean search(long key) {
+				lock.readLock().lock();
+				try {
+					return trie.search(key);
+				} finally {
+					lock.readLock().unlock();
+				}
+			}
+
+			@Override
+			public void insert(long key) {
+				lock.writeLock().lock();
+				try {
+					trie.insert(key);
+				} finally {
+					lock.writeLock().unlock();
+				}
+			}
+
+			@Override
+			public void delete(long key) {
+				lock.writeLock().lock();
+				try {
+					trie.delete(key);
+				} finally {
+					lock.writeLock().unlock();
+				}
+			}
+		};
+	}
+
+	// Runs one trial, and stores the lookups and updates per microsecond in rates[0] and rates[1].
+	private static void trial(Target target, long[] keys, long[][] lookups, long seed, double[] rates)
+			throws InterruptedException {
+		for (long key : keys) {
+			target.insert(key);
+		}
+
+		int readers = lookups.length;
+		long[] counts = new long[readers + 1];
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[readers + 1];
+		long[] end = new long[1];
+		for (int r = 0; r < readers; r++) {
+			final int id = r;
+			threads[r] = new Thread(() -> {
+				long[] mine = lookups[id];
+				int found = 0, i = 0;
+				long ops = 0;
+				awaitQuietly(start);
+				while (System.nanoTime() < end[0]) {
+					found += target.search(mine[i]) ? 1 : 0;
+					i = (i + 1) & (LOOKUPS - 1);
+					ops++;
+				}
+				counts[id] = ops;
+				sink += found;
+			});
+		}
+		threads[readers] = new Thread(() -> {
+			Random random = new Random(seed);
+			long previous = random.nextLong() | 1; // Odd keys are never stored up front, so lookups all hit
+			long ops = 0;
+			awaitQuietly(start);
+			target.insert(previous);
+			while (System.nanoTime() < end[0]) {
+				long next = random.nextLong() | 1;
+				target.insert(next);
+				target.delete(previous);
+				previous = next;
+				ops += 2;
+			}
+			counts[readers] = ops;
+		});
+
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		long began = System.nanoTime();
+		end[0] = began + TRIAL_MILLIS * 1_000_000L;
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		double micros = (System.nanoTime() - began) / 1000.0;
+
+		long reads = 0;
+		for (int r = 0; r < readers; r++) {
+			reads += counts[r];
+		}
+		rates[0] = reads / micros;
+		rates[1] = counts[readers] / micros;
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static double median(double[] values) {
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+
+	// Benchmarks one trie (lockFree or not) with the given number of readers, and prints its report line.
+	private static void run(boolean lockFree, int n, int readers, long[] keys, Random random)
+			throws InterruptedException {
+		long[][] lookups = new long[readers][LOOKUPS];
+		for (long[] stream : lookups) {
+			for (int i = 0; i < LOOKUPS; i++) {
+				stream[i] = keys[random.nextInt(n)];
+			}
+		}
+
+		double[] reads = new double[MEASURED_ROUNDS], writes = new double[MEASURED_ROUNDS];
+		double[] rates = new double[2];
+		for (int i = 0; i < WARMUP_ROUNDS + MEASURED_ROUNDS; i++) {
+			trial(lockFree ? lockFree() : readWriteLocked(), keys, lookups, random.nextLong(), rates);
+			if (i >= WARMUP_ROUNDS) {
+				reads[i - WARMUP_ROUNDS] = rates[0];
+				writes[i - WARMUP_ROUNDS] = rates[1];
+			}
+		}
+		System.out.println(String.format("%-10s %9d %7d %12.2f %12.2f", lockFree ? "lock-free" : "rw-lock", n,
+				readers, median(reads), median(writes)));
+	}
+
+	/**
+	 * Run the benchmark and print its report to standard output.
+	 * @param args The trie sizes to test. Defaults to 2<sup>10</sup> and 2<sup>17</sup>.
+	 * @throws InterruptedException if the main thread is interrupted while waiting for a trial to end.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int[] sizes = DEFAULT_SIZES;
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				sizes[i] = Integer.parseInt(args[i]);
+				if (sizes[i] < 1) {
+					throw new IllegalArgumentException("Trie sizes must be positive: " + args[i]);
+				}
+			}
+		}
+
+		System.out.println("available processors: " + Runtime.getRuntime().availableProcessors());
+		System.out.println(String.format("%-10s %9s %7s %12s %12s", "trie", "keys", "readers", "lookups/us",
+				"updates/us"));
+		Random random = new Random(47);
+		for (int n : sizes) {
+			long[] keys = new long[n];
+			for (int i = 0; i < n; i++) {
+				keys[i] = random.nextLong() & ~1L;
+			}
+			for (int readers : READERS) {
+				run(false, n, readers, keys, random);
+				run(true, n, readers, keys, random);
+			}
+		}
+	}
+}